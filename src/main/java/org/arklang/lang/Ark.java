@@ -5,36 +5,139 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class Ark {
 
+  /**
+   * Execution engines that can run resolved statements.
+   */
+  enum Engine {
+    TREE, CLOSURE, VM
+  }
+
   private static final Interpreter interpreter = new Interpreter();
+  private static final ClosureCompiler closures = new ClosureCompiler(interpreter);
+  private static final VM vm = new VM(interpreter);
+  private static Engine engine = Engine.TREE;
+  private static boolean cache = false;
+  private static boolean stream = false;
+  private static boolean lazy = false;
 
   final static String version = "0.0.1";
   final static String runtime_version = "0.0.1";
   static boolean hadError = false;
+  private static final ThreadLocal<List<CompileError.Problem>> collected = new ThreadLocal<>();
   static boolean hadRuntimeError = false;
 
   public static void main(String[] args) throws Exception {
-    if (args.length > 1) {
-      System.out.println("usage: hype [script]");
-    } else if (args.length == 1) {
-      runFile(args[0]);
+    List<String> files = new ArrayList<>();
+    for (String arg : args) {
+      if (arg.startsWith("--")) {
+        if (!option(arg)) {
+          usage();
+          return;
+        }
+      } else {
+        files.add(arg);
+      }
+    }
+
+    // the closure and VM engines compile every lambda body before running
+    if (lazy && engine != Engine.TREE) {
+      System.out.println("--lazy is only supported by --engine=tree.");
+      usage();
+      return;
+    }
+
+    if (files.size() > 1) {
+      usage();
+    } else if (files.size() == 1) {
+      runFile(files.get(0));
     } else {
       runPrompt();
     }
   }
 
+  private static boolean option(String arg) {
+    if (arg.startsWith("--engine=")) {
+      try {
+        engine = Engine.valueOf(arg.substring("--engine=".length()).toUpperCase());
+        return true;
+      } catch (IllegalArgumentException e) {
+        return false;
+      }
+    }
+    if (arg.equals("--cache")) {
+      cache = true;
+      return true;
+    }
+    if (arg.equals("--stream")) {
+      stream = true;
+      return true;
+    }
+    if (arg.equals("--lazy")) {
+      lazy = true;
+      return true;
+    }
+    if (arg.startsWith("--jit-threshold=")) {
+      try {
+        Jit.setThreshold(Integer.parseInt(arg.substring("--jit-threshold=".length())));
+        return true;
+      } catch (NumberFormatException e) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  private static void usage() {
+    System.out.println("usage: ark [--engine=tree|closure|vm] [--jit-threshold=calls] [--cache] [--stream] [--lazy] [script]");
+  }
+
   private static void runFile(String path) throws IOException {
-    byte[] bytes = Files.readAllBytes(Paths.get(path));
-    run(new String(bytes, Charset.defaultCharset()), false);
+    if (stream) {
+      streamFile(path);
+    } else {
+      loadFile(path);
+    }
 
     if (hadError) System.exit(65);
     if (hadRuntimeError) System.exit(70);
   }
 
+  private static void loadFile(String path) throws IOException {
+    Path file = Paths.get(path);
+    byte[] bytes = Files.readAllBytes(file);
+    List<Stmt> statements = cache ? AstCache.load(file, bytes) : null;
+    if (statements == null) {
+      statements = parse(new String(bytes, Charset.defaultCharset()));
+      // a lazily parsed tree would be parsed in full to be stored
+      if (statements != null && cache && !lazy) AstCache.store(file, bytes, statements);
+    }
+    if (statements != null) execute(statements, false);
+  }
+
+  /**
+   * Runs each top-level declaration as soon as it is parsed, so that the
+   * memory used stays about the same however long the file is. Unlike a
+   * loaded script, declarations before a syntax error will have run.
+   */
+  private static void streamFile(String path) throws IOException {
+    Parser parser = new Parser(new Scanner(Source.map(Paths.get(path))).streamTokens());
+    Resolver resolver = new Resolver();
+    for (Stmt stmt = parser.next(); stmt != null && !hadError; stmt = parser.next()) {
+      List<Stmt> statements = Collections.singletonList(stmt);
+      resolver.resolve(statements);
+      if (hadError || !execute(statements, false)) break;
+    }
+  }
+
   private static void runPrompt() throws IOException {
     InputStreamReader input = new InputStreamReader(System.in);
     BufferedReader reader = new BufferedReader(input);
@@ -54,17 +157,38 @@ public class Ark {
   }
 
   private static void run(String source, boolean promptMode) {
-    List<Token> tokens = new Scanner(source).scanTokens();
+    List<Stmt> statements = parse(source);
+    if (statements != null) execute(statements, promptMode);
+  }
 
-    Parser parser = new Parser(tokens);
+  /**
+   * Scans, parses and resolves source, giving null on a syntax error.
+   */
+  private static List<Stmt> parse(String source) {
+    TokenBuffer tokens = new Scanner(source).scanTokens();
+
+    Parser parser = new Parser(tokens, lazy);
     List<Stmt> statements = parser.parse();
-    if (hadError) return;
+    if (hadError) return null;
 
-    Resolver resolver = new Resolver(interpreter);
+    Resolver resolver = new Resolver();
     resolver.resolve(statements);
-    if (hadError) return;
+    if (hadError) return null;
+    return statements;
+  }
 
-    interpreter.interpret(statements, promptMode);
+  /**
+   * Runs statements on the selected engine. Returns false if a send or a
+   * runtime error ended the script.
+   */
+  private static boolean execute(List<Stmt> statements, boolean promptMode) {
+    if (engine == Engine.VM) {
+      return vm.interpret(statements, promptMode);
+    } else if (engine == Engine.CLOSURE) {
+      return closures.interpret(statements, promptMode);
+    } else {
+      return interpreter.interpret(statements, promptMode);
+    }
   }
 
   static void error(int line, String message) {
@@ -79,7 +203,28 @@ public class Ark {
     }
   }
 
+  /**
+   * Runs {@code work} with the errors it reports on this thread added to
+   * {@code problems} rather than printed, leaving {@link #hadError} alone.
+   * Embedders and lazily parsed bodies compile this way, so that they
+   * neither take turns nor see each other's errors.
+   */
+  static <T> T collectErrors(List<CompileError.Problem> problems, Supplier<T> work) {
+    List<CompileError.Problem> enclosing = collected.get();
+    collected.set(problems);
+    try {
+      return work.get();
+    } finally {
+      collected.set(enclosing);
+    }
+  }
+
   private static void report(int line, String where, String message) {
+    List<CompileError.Problem> problems = collected.get();
+    if (problems != null) {
+      problems.add(new CompileError.Problem(line, where, message));
+      return;
+    }
     System.err.println(
         "[line " + line + "] Error" + where + ": " + message
     );
@@ -87,8 +232,8 @@ public class Ark {
   }
 
   static void runtimeError(RuntimeError error) {
-    System.err.println(error.getMessage() +
-        "\n[line " + error.token.line + "]");
+    System.err.println(error.getMessage() + (error.token == null ? ""
+        : "\n[line " + error.token.line + "]"));
     hadRuntimeError = true;
   }
 
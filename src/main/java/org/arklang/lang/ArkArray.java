@@ -1,51 +1,244 @@
 package org.arklang.lang;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
-public class ArkArray implements ArkIndexable, ArkEnumerable {
-  private final List<Object> items;
+/**
+ * Ark array value.
+ *
+ * Items are kept in the narrowest storage that holds all of them: an int[],
+ * double[] or char[] when every item is an integer, double or character, and
+ * an Object[] otherwise. Storing a value the current storage cannot hold
+ * moves the array to generic storage; it never narrows again.
+ *
+ * Arrays made by a range expression hold only their bounds, and are
+ * materialized into int storage on the first write.
+ *
+ * Items leave the array through {@link #get} and {@link #iterator} as boxed
+ * values, since the frames and operand stacks of every engine hold objects.
+ * Integers outside the small {@link Integer#valueOf} cache are allocated on
+ * each such read. Callers that consume an int directly read it through
+ * {@link #intAt} instead, when {@link #holdsInts} says it is there.
+ */
+public class ArkArray implements ArkIndexable, ArkEnumerable<Object> {
+
+  private enum Storage { RANGE, INT, DOUBLE, CHAR, OBJECT }
+
+  private Storage storage;
+  private int[] ints;
+  private double[] doubles;
+  private char[] chars;
+  private Object[] objects;
+  private int from;
+  private int size;
 
   ArkArray(List<Object> items) {
-    this.items = items;
+    this(items.toArray());
+  }
+
+  ArkArray(Object[] items) {
+    size = items.length;
+    storage = storageFor(items);
+    switch (storage) {
+      case INT:
+        ints = new int[size];
+        for (int i = 0; i < size; ++i) ints[i] = (Integer) items[i];
+        break;
+      case DOUBLE:
+        doubles = new double[size];
+        for (int i = 0; i < size; ++i) doubles[i] = (Double) items[i];
+        break;
+      case CHAR:
+        chars = new char[size];
+        for (int i = 0; i < size; ++i) chars[i] = (Character) items[i];
+        break;
+      default:
+        objects = items;
+    }
+  }
+
+  private ArkArray(int from, int size) {
+    this.storage = Storage.RANGE;
+    this.from = from;
+    this.size = size;
+  }
+
+  /**
+   * The {@code size} integers counting up from {@code from}.
+   */
+  static ArkArray range(int from, int size) {
+    return new ArkArray(from, size);
   }
 
   @Override
   public Object get(Token token, Object index) {
-    try {
-      return items.get(indexToInteger(token, index));
-    } catch (IndexOutOfBoundsException e) {
-      throw new RuntimeError(token, "Array index out of bounds.");
-    }
+    return item(checkIndex(token, index));
   }
 
   @Override
   public Object set(Token token, Object index, Object value) {
-    try {
-      items.set(indexToInteger(token, index), value);
-    } catch (IndexOutOfBoundsException e) {
-      throw new RuntimeError(token, "Array index out of bounds.");
-    }
+    int i = checkIndex(token, index);
+    if (storage == Storage.RANGE) materialize();
+    if (storage != storageOf(value)) generalize();
+    store(i, value);
     return value;
   }
 
+  /**
+   * Whether every item is an int that {@link #intAt} reads without boxing.
+   */
+  boolean holdsInts() {
+    return storage == Storage.INT || storage == Storage.RANGE;
+  }
+
+  /**
+   * The item at {@code index} of an array that {@link #holdsInts}.
+   */
+  int intAt(Token token, Object index) {
+    int i = checkIndex(token, index);
+    return storage == Storage.RANGE ? from + i : ints[i];
+  }
+
   public void add(Object value) {
-    items.add(value);
+    if (storage == Storage.RANGE) materialize();
+    if (size == 0 && storage != storageOf(value)) {
+      storage = storageOf(value);
+      ints = null;
+      doubles = null;
+      chars = null;
+      objects = null;
+    } else if (storage != storageOf(value)) {
+      generalize();
+    }
+    if (size == capacity()) grow();
+    store(size++, value);
   }
 
   @Override
   public int length() {
-    return items.size();
+    return size;
   }
 
   @Override
   public String toString() {
-    return items.toString();
+    StringBuilder builder = new StringBuilder("[");
+    for (int i = 0; i < size; ++i) {
+      if (i > 0) builder.append(", ");
+      builder.append(item(i));
+    }
+    return builder.append(']').toString();
   }
 
   @Override
   public Iterator<Object> iterator() {
-    return items.iterator();
+    return new Iterator<Object>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      public Object next() {
+        if (next >= size) throw new NoSuchElementException();
+        return item(next++);
+      }
+    };
   }
 
+  private int checkIndex(Token token, Object index) {
+    int i = indexToInteger(token, index);
+    if (i < 0 || i >= size) {
+      throw new RuntimeError(token, "Array index out of bounds.");
+    }
+    return i;
+  }
+
+  private Object item(int i) {
+    switch (storage) {
+      case RANGE: return from + i;
+      case INT: return ints[i];
+      case DOUBLE: return doubles[i];
+      case CHAR: return chars[i];
+      default: return objects[i];
+    }
+  }
+
+  /*
+  Writes a value the current storage is known to hold.
+   */
+  private void store(int i, Object value) {
+    switch (storage) {
+      case INT: ints[i] = (Integer) value; break;
+      case DOUBLE: doubles[i] = (Double) value; break;
+      case CHAR: chars[i] = (Character) value; break;
+      default: objects[i] = value;
+    }
+  }
+
+  private int capacity() {
+    switch (storage) {
+      case RANGE: return size;
+      case INT: return ints == null ? 0 : ints.length;
+      case DOUBLE: return doubles == null ? 0 : doubles.length;
+      case CHAR: return chars == null ? 0 : chars.length;
+      default: return objects == null ? 0 : objects.length;
+    }
+  }
+
+  private void grow() {
+    int capacity = Math.max(8, size * 2);
+    switch (storage) {
+      case INT: ints = ints == null ? new int[capacity] : Arrays.copyOf(ints, capacity); break;
+      case DOUBLE: doubles = doubles == null ? new double[capacity] : Arrays.copyOf(doubles, capacity); break;
+      case CHAR: chars = chars == null ? new char[capacity] : Arrays.copyOf(chars, capacity); break;
+      default: objects = objects == null ? new Object[capacity] : Arrays.copyOf(objects, capacity);
+    }
+  }
+
+  /*
+  Replaces range bounds with the integers they stand for.
+   */
+  private void materialize() {
+    ints = new int[size];
+    for (int i = 0; i < size; ++i) {
+      ints[i] = from + i;
+    }
+    storage = Storage.INT;
+  }
+
+  /*
+  Moves the items to generic storage so that any value can be stored.
+   */
+  private void generalize() {
+    if (storage == Storage.OBJECT) return;
+    Object[] items = new Object[Math.max(size, capacity())];
+    for (int i = 0; i < size; ++i) {
+      items[i] = item(i);
+    }
+    objects = items;
+    ints = null;
+    doubles = null;
+    chars = null;
+    storage = Storage.OBJECT;
+  }
+
+  private static Storage storageFor(Object[] items) {
+    if (items.length == 0) return Storage.OBJECT;
+    Storage storage = storageOf(items[0]);
+    for (int i = 1; i < items.length && storage != Storage.OBJECT; ++i) {
+      if (storageOf(items[i]) != storage) storage = Storage.OBJECT;
+    }
+    return storage;
+  }
+
+  private static Storage storageOf(Object value) {
+    if (value instanceof Integer) return Storage.INT;
+    if (value instanceof Double) return Storage.DOUBLE;
+    if (value instanceof Character) return Storage.CHAR;
+    return Storage.OBJECT;
+  }
 }
@@ -8,4 +8,12 @@ public interface ArkCallable {
     return false;
   }
   Object call(Interpreter interpreter, List<Object> arguments);
+
+  /**
+   * Call made at {@code token}. Callables whose errors should point at the
+   * call site override this one.
+   */
+  default Object call(Interpreter interpreter, Token token, List<Object> arguments) {
+    return call(interpreter, arguments);
+  }
 }
@@ -0,0 +1,146 @@
+package org.arklang.lang;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Ark channel value: a bounded first-in first-out queue for passing values
+ * between tasks.
+ *
+ * Putting to a full channel waits for room and taking from an empty one
+ * waits for a value. Once closed, a channel refuses new values but can still
+ * be drained; taking from a closed, empty channel gives nil. Enumerating a
+ * channel takes its values until it is closed and drained.
+ */
+public class ArkChannel implements ArkEnumerable<Object> {
+
+  private static final Object DRAINED = new Object();
+
+  private final Object[] buffer;
+  private int head;
+  private int count;
+  private boolean closed;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+
+  ArkChannel(Token token, Object capacity) {
+    if (!(capacity instanceof Integer) || (Integer) capacity < 1) {
+      throw new RuntimeError(token, "Channel capacity must be a positive integer.");
+    }
+    buffer = new Object[(Integer) capacity];
+  }
+
+  void put(Token token, Object value) {
+    for (;;) {
+      lock.lock();
+      try {
+        if (closed) {
+          throw new RuntimeError(token, "Cannot put to a closed channel.");
+        }
+        if (count < buffer.length) {
+          buffer[(head + count) % buffer.length] = value;
+          ++count;
+          notEmpty.signal();
+          return;
+        }
+      } finally {
+        lock.unlock();
+      }
+      await(notFull, () -> closed || count < buffer.length);
+    }
+  }
+
+  Object take() {
+    Object value = poll();
+    return value == DRAINED ? null : value;
+  }
+
+  void close() {
+    lock.lock();
+    try {
+      closed = true;
+      notEmpty.signalAll();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "<chan>";
+  }
+
+  @Override
+  public Iterator<Object> iterator() {
+    return new Iterator<Object>() {
+      private Object next = null;
+      private boolean pending = false;
+
+      @Override
+      public boolean hasNext() {
+        if (!pending) {
+          next = poll();
+          pending = true;
+        }
+        return next != DRAINED;
+      }
+
+      @Override
+      public Object next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        pending = false;
+        return next;
+      }
+    };
+  }
+
+  /*
+  Takes the next value, or DRAINED once the channel is closed and empty.
+   */
+  private Object poll() {
+    for (;;) {
+      lock.lock();
+      try {
+        if (count > 0) {
+          Object value = buffer[head];
+          buffer[head] = null;
+          head = (head + 1) % buffer.length;
+          --count;
+          notFull.signal();
+          return value;
+        }
+        if (closed) {
+          return DRAINED;
+        }
+      } finally {
+        lock.unlock();
+      }
+      await(notEmpty, () -> closed || count > 0);
+    }
+  }
+
+  private void await(Condition condition, BooleanSupplier ready) {
+    BooleanSupplier locked = () -> {
+      lock.lock();
+      try {
+        return ready.getAsBoolean();
+      } finally {
+        lock.unlock();
+      }
+    };
+    Tasks.block(locked, () -> {
+      lock.lock();
+      try {
+        while (!ready.getAsBoolean()) condition.await();
+      } finally {
+        lock.unlock();
+      }
+    });
+  }
+}
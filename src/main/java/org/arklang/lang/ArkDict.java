@@ -0,0 +1,170 @@
+package org.arklang.lang;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Ark dict value: a hash map from keys to values, enumerated by key in
+ * insertion order.
+ *
+ * Entries are stored densely in insertion order alongside their cached
+ * hashes, and found through an open-addressed, linearly probed index of
+ * entry numbers. Integer and string keys are compared without a call to
+ * equals. String keys are held as their java String, so a string key is
+ * not affected by later writes to the string it was read from. So that
+ * keys match as {@code ==} does, a char key is held as a one-character
+ * string and a double key with a whole value in int range as that int.
+ */
+public class ArkDict implements ArkIndexable, ArkEnumerable<Object> {
+
+  private static final int MIN_CAPACITY = 8;
+
+  private int[] index;
+  private Object[] keys;
+  private Object[] values;
+  private int[] hashes;
+  private int size;
+
+  ArkDict(int expected) {
+    int capacity = MIN_CAPACITY;
+    while (capacity * 2 < expected * 3) capacity <<= 1;
+    index = new int[capacity];
+    keys = new Object[Math.max(expected, MIN_CAPACITY)];
+    values = new Object[keys.length];
+    hashes = new int[keys.length];
+  }
+
+  /**
+   * The value stored under {@code key}, or nil when there is none.
+   */
+  @Override
+  public Object get(Token token, Object key) {
+    key = checkKey(token, key);
+    int entry = find(key, hash(key));
+    return entry >= 0 ? values[entry] : null;
+  }
+
+  @Override
+  public Object set(Token token, Object key, Object value) {
+    key = checkKey(token, key);
+    int hash = hash(key);
+    int entry = find(key, hash);
+    if (entry >= 0) {
+      values[entry] = value;
+      return value;
+    }
+
+    if (size == keys.length) {
+      int capacity = size * 2;
+      keys = Arrays.copyOf(keys, capacity);
+      values = Arrays.copyOf(values, capacity);
+      hashes = Arrays.copyOf(hashes, capacity);
+    }
+    keys[size] = key;
+    values[size] = value;
+    hashes[size] = hash;
+    index[~entry] = ++size;
+    if (size * 3 >= index.length * 2) rehash();
+    return value;
+  }
+
+  @Override
+  public int length() {
+    return size;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("{");
+    for (int i = 0; i < size; ++i) {
+      if (i > 0) builder.append(", ");
+      builder.append(keys[i]).append(": ").append(values[i]);
+    }
+    return builder.append('}').toString();
+  }
+
+  @Override
+  public Iterator<Object> iterator() {
+    return new Iterator<Object>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      public Object next() {
+        if (next >= size) throw new NoSuchElementException();
+        Object key = keys[next++];
+        return key instanceof String ? new ArkString((String) key) : key;
+      }
+    };
+  }
+
+  /*
+  Returns the entry holding key, or the complement of the index slot where
+  it would be inserted.
+   */
+  private int find(Object key, int hash) {
+    int mask = index.length - 1;
+    if (key instanceof Integer) {
+      int k = (Integer) key;
+      for (int i = hash & mask; ; i = (i + 1) & mask) {
+        int entry = index[i] - 1;
+        if (entry < 0) return ~i;
+        if (hashes[entry] == hash && keys[entry] instanceof Integer
+            && (Integer) keys[entry] == k) {
+          return entry;
+        }
+      }
+    }
+    if (key instanceof String) {
+      for (int i = hash & mask; ; i = (i + 1) & mask) {
+        int entry = index[i] - 1;
+        if (entry < 0) return ~i;
+        if (hashes[entry] == hash && keys[entry] instanceof String
+            && ((String) keys[entry]).equals(key)) {
+          return entry;
+        }
+      }
+    }
+    for (int i = hash & mask; ; i = (i + 1) & mask) {
+      int entry = index[i] - 1;
+      if (entry < 0) return ~i;
+      if (hashes[entry] == hash && keys[entry].equals(key)) return entry;
+    }
+  }
+
+  private void rehash() {
+    index = new int[index.length * 2];
+    int mask = index.length - 1;
+    for (int entry = 0; entry < size; ++entry) {
+      int i = hashes[entry] & mask;
+      while (index[i] != 0) i = (i + 1) & mask;
+      index[i] = entry + 1;
+    }
+  }
+
+  private static Object checkKey(Token token, Object key) {
+    if (key == null) {
+      throw new RuntimeError(token, "Dict key cannot be nil.");
+    }
+    if (key instanceof Double) {
+      double d = (Double) key;
+      int i = (int) d;
+      return i == d ? (Object) i : key;
+    }
+    return key instanceof ArkString || key instanceof Character ? key.toString() : key;
+  }
+
+  /*
+  Spreads the hash so that runs of sequential int keys do not fill a run of
+  neighbouring slots.
+   */
+  private static int hash(Object key) {
+    int h = (key instanceof Integer ? (Integer) key : key.hashCode()) * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
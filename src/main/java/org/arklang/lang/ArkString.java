@@ -1,62 +1,250 @@
 package org.arklang.lang;
 
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Iterator;
-import java.util.List;
+import java.util.NoSuchElementException;
 
+/**
+ * Ark string value: a mutable sequence of characters.
+ *
+ * Text that fits in Latin-1 is stored one byte per character, otherwise as
+ * a char[]. Writing a character outside Latin-1 inflates a compact string to
+ * chars. The java String form is built on demand and cached until the next
+ * write.
+ *
+ * A concatenation is held as a {@link Rope} of its operands and flattened
+ * into an array on the first indexed access or output, so that building a
+ * string up piece by piece takes linear time.
+ *
+ * String literals are built once per {@link Expr.Str} and each evaluation
+ * yields a copy sharing the literal's array, which is copied on first write.
+ */
 public class ArkString implements ArkIndexable, ArkEnumerable<Character> {
 
-  private List<Character> string = new ArrayList<Character>();
+  private byte[] latin1;
+  private char[] chars;
   private String natural;
+  // Cleared only once the flat text is stored, so a reader that sees it
+  // null also sees the text.
+  private volatile Rope rope;
+  private boolean shared;
 
   public ArkString(String str) {
-    natural = str;
-    for (Character c : str.toCharArray()) {
-      string.add(c);
+    store(str);
+  }
+
+  private ArkString(Rope rope) {
+    this.rope = rope;
+  }
+
+  private ArkString(ArkString original) {
+    latin1 = original.latin1;
+    chars = original.chars;
+    natural = original.natural;
+    shared = true;
+  }
+
+  /**
+   * The value of a string literal: a fresh string over the literal's shared,
+   * pre-built text.
+   */
+  static ArkString literal(Expr.Str expr) {
+    return prototype(expr).share();
+  }
+
+  /**
+   * The pre-built text of a string literal. Never handed to scripts, only
+   * shared, so it is never written.
+   */
+  static ArkString prototype(Expr.Str expr) {
+    ArkString value = expr.value;
+    if (value == null) {
+      value = new ArkString(expr.str);
+      expr.value = value;
     }
+    return value;
+  }
+
+  /**
+   * A copy of this string that shares its array until either is written.
+   */
+  ArkString share() {
+    return new ArkString(this);
+  }
+
+  /**
+   * The string {@code left + right}, where either operand may be any value.
+   */
+  static ArkString concat(Object left, Object right) {
+    return new ArkString(new Rope(part(left), part(right)));
   }
 
   @Override
   public Iterator<Character> iterator() {
-    return string.iterator();
+    flatten();
+    return new Iterator<Character>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < length();
+      }
+
+      @Override
+      public Character next() {
+        if (next >= length()) throw new NoSuchElementException();
+        return charAt(next++);
+      }
+    };
   }
 
   @Override
   public Object get(Token token, Object index) {
-    try {
-      return string.get(indexToInteger(token, index));
-    } catch (IndexOutOfBoundsException e) {
-      throw new RuntimeError(token, "Array index out of bounds.");
-    }
+    flatten();
+    return charAt(checkIndex(token, index));
   }
 
   @Override
   public Object set(Token token, Object index, Object value) {
-    try {
-      Character c = (Character)value;
-      string.set(indexToInteger(token, index), c);
-      updateNatural();
-    } catch (IndexOutOfBoundsException e) {
-      throw new RuntimeError(token, "Array index out of bounds.");
-    } catch (ClassCastException e) {
+    flatten();
+    int i = checkIndex(token, index);
+    if (!(value instanceof Character)) {
       throw new RuntimeError(token, "Can only assign character to indexed string.");
     }
+    char c = (Character) value;
+    if (shared) unshare();
+    if (latin1 != null && c > 0xFF) inflate();
+    if (latin1 != null) {
+      latin1[i] = (byte) c;
+    } else {
+      chars[i] = c;
+    }
+    natural = null;
     return value;
   }
 
   @Override
   public int length() {
-    return string.size();
+    Rope pending = rope;
+    if (pending != null) return pending.length;
+    return latin1 != null ? latin1.length : chars.length;
   }
 
   @Override
   public String toString() {
+    flatten();
+    if (natural == null) natural = text();
     return natural;
   }
 
-  private void updateNatural() {
-    StringBuilder b = new StringBuilder();
-    for (Character c : string) b.append(c);
-    natural = b.toString();
+  /*
+  The text as a java String, without caching it.
+   */
+  private String text() {
+    String cached = natural;
+    if (cached != null) return cached;
+    return latin1 != null
+        ? new String(latin1, StandardCharsets.ISO_8859_1)
+        : new String(chars);
+  }
+
+  private char charAt(int i) {
+    return latin1 != null ? (char) (latin1[i] & 0xFF) : chars[i];
+  }
+
+  private int checkIndex(Token token, Object index) {
+    int i = indexToInteger(token, index);
+    if (i < 0 || i >= length()) {
+      throw new RuntimeError(token, "Array index out of bounds.");
+    }
+    return i;
+  }
+
+  private void store(String str) {
+    if (isLatin1(str)) {
+      latin1 = str.getBytes(StandardCharsets.ISO_8859_1);
+    } else {
+      chars = str.toCharArray();
+    }
+  }
+
+  /*
+  Writes out a pending concatenation. The parts are walked with an explicit
+  stack since a string built in a loop makes a rope as deep as the loop ran.
+   */
+  private void flatten() {
+    Rope pending = rope;
+    if (pending == null) return;
+    StringBuilder builder = new StringBuilder(pending.length);
+    Deque<Object> parts = new ArrayDeque<>();
+    parts.push(pending);
+    while (!parts.isEmpty()) {
+      Object part = parts.pop();
+      if (part instanceof Rope) {
+        parts.push(((Rope) part).right);
+        parts.push(((Rope) part).left);
+      } else {
+        builder.append((String) part);
+      }
+    }
+    store(builder.toString());
+    natural = null;
+    rope = null;
+  }
+
+  /*
+  The immutable form of a concatenation operand. A pending rope is shared as
+  is; anything else is captured as its text, so later writes to the operand
+  do not show through. The operand is not left holding that text.
+   */
+  private static Object part(Object value) {
+    if (value instanceof ArkString) {
+      ArkString string = (ArkString) value;
+      Rope pending = string.rope;
+      return pending != null ? pending : string.text();
+    }
+    return String.valueOf(value);
+  }
+
+  private static final class Rope {
+    final Object left;
+    final Object right;
+    final int length;
+
+    Rope(Object left, Object right) {
+      this.left = left;
+      this.right = right;
+      this.length = lengthOf(left) + lengthOf(right);
+    }
+
+    private static int lengthOf(Object part) {
+      return part instanceof Rope ? ((Rope) part).length : ((String) part).length();
+    }
+  }
+
+  private void unshare() {
+    if (latin1 != null) {
+      latin1 = latin1.clone();
+    } else {
+      chars = chars.clone();
+    }
+    shared = false;
+  }
+
+  private void inflate() {
+    chars = new char[latin1.length];
+    for (int i = 0; i < chars.length; ++i) {
+      chars[i] = (char) (latin1[i] & 0xFF);
+    }
+    latin1 = null;
+  }
+
+  private static boolean isLatin1(String str) {
+    for (int i = 0; i < str.length(); ++i) {
+      if (str.charAt(i) > 0xFF) return false;
+    }
+    return true;
   }
 }
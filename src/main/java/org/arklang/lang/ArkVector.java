@@ -0,0 +1,190 @@
+package org.arklang.lang;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Persistent vector: an immutable array whose updates return a new version
+ * sharing all but O(log32 n) of the old one's structure.
+ *
+ * Items live in the leaves of a 32-way trie, except for the last up to 32
+ * items which are kept in a separate tail so that appending is usually a
+ * copy of the tail alone.
+ */
+public class ArkVector implements ArkIndexable, ArkEnumerable<Object> {
+
+  private static final int BITS = 5;
+  private static final int WIDTH = 1 << BITS;
+  private static final int MASK = WIDTH - 1;
+
+  static final ArkVector EMPTY = new ArkVector(0, BITS, new Object[WIDTH], new Object[0]);
+
+  private final int size;
+  private final int shift;
+  private final Object[] root;
+  private final Object[] tail;
+
+  private ArkVector(int size, int shift, Object[] root, Object[] tail) {
+    this.size = size;
+    this.shift = shift;
+    this.root = root;
+    this.tail = tail;
+  }
+
+  static ArkVector of(Iterable<?> items) {
+    ArkVector vector = EMPTY;
+    for (Object item : items) {
+      vector = vector.conj(item);
+    }
+    return vector;
+  }
+
+  @Override
+  public Object get(Token token, Object index) {
+    int i = checkIndex(token, index, size);
+    return leafFor(i)[i & MASK];
+  }
+
+  @Override
+  public Object set(Token token, Object index, Object value) {
+    throw new RuntimeError(token, "Vectors are persistent, use assoc to update one.");
+  }
+
+  @Override
+  public int length() {
+    return size;
+  }
+
+  /**
+   * A version with item {@code index} replaced, or appended when the index
+   * is one past the end.
+   */
+  ArkVector assoc(Token token, Object index, Object value) {
+    int i = checkIndex(token, index, size + 1);
+    if (i == size) {
+      return conj(value);
+    }
+    if (i >= tailOffset()) {
+      Object[] newTail = tail.clone();
+      newTail[i & MASK] = value;
+      return new ArkVector(size, shift, root, newTail);
+    }
+    return new ArkVector(size, shift, assoc(shift, root, i, value), tail);
+  }
+
+  /**
+   * A version with {@code value} appended.
+   */
+  ArkVector conj(Object value) {
+    if (size - tailOffset() < WIDTH) {
+      Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+      newTail[tail.length] = value;
+      return new ArkVector(size + 1, shift, root, newTail);
+    }
+
+    // The tail is full: push it into the trie, adding a level on overflow.
+    Object[] newRoot;
+    int newShift = shift;
+    if ((size >>> BITS) > (1 << shift)) {
+      newRoot = new Object[WIDTH];
+      newRoot[0] = root;
+      newRoot[1] = newPath(shift, tail);
+      newShift += BITS;
+    } else {
+      newRoot = pushTail(shift, root, tail);
+    }
+    return new ArkVector(size + 1, newShift, newRoot, new Object[] { value });
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("[");
+    String separator = "";
+    for (Object item : this) {
+      builder.append(separator).append(item);
+      separator = ", ";
+    }
+    return builder.append(']').toString();
+  }
+
+  /*
+  Walks one leaf at a time rather than descending the trie per item.
+   */
+  @Override
+  public Iterator<Object> iterator() {
+    return new Iterator<Object>() {
+      private int next = 0;
+      private Object[] leaf = size > 0 ? leafFor(0) : null;
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      public Object next() {
+        if (next >= size) throw new NoSuchElementException();
+        if (next > 0 && (next & MASK) == 0) leaf = leafFor(next);
+        return leaf[next++ & MASK];
+      }
+    };
+  }
+
+  private int checkIndex(Token token, Object index, int bound) {
+    int i = indexToInteger(token, index);
+    if (i < 0 || i >= bound) {
+      throw new RuntimeError(token, "Array index out of bounds.");
+    }
+    return i;
+  }
+
+  private int tailOffset() {
+    return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+  }
+
+  private Object[] leafFor(int i) {
+    if (i >= tailOffset()) {
+      return tail;
+    }
+    Object[] node = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      node = (Object[]) node[(i >>> level) & MASK];
+    }
+    return node;
+  }
+
+  private static Object[] assoc(int level, Object[] node, int i, Object value) {
+    Object[] copy = node.clone();
+    if (level == 0) {
+      copy[i & MASK] = value;
+    } else {
+      int child = (i >>> level) & MASK;
+      copy[child] = assoc(level - BITS, (Object[]) node[child], i, value);
+    }
+    return copy;
+  }
+
+  private Object[] pushTail(int level, Object[] parent, Object[] leaf) {
+    int child = ((size - 1) >>> level) & MASK;
+    Object[] copy = parent.clone();
+    if (level == BITS) {
+      copy[child] = leaf;
+    } else {
+      Object[] node = (Object[]) parent[child];
+      copy[child] = node != null
+          ? pushTail(level - BITS, node, leaf)
+          : newPath(level - BITS, leaf);
+    }
+    return copy;
+  }
+
+  private static Object[] newPath(int level, Object[] leaf) {
+    if (level == 0) {
+      return leaf;
+    }
+    Object[] node = new Object[WIDTH];
+    node[0] = newPath(level - BITS, leaf);
+    return node;
+  }
+}
@@ -0,0 +1,855 @@
+package org.arklang.lang;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Binary cache of resolved scripts, so that running an unchanged script
+ * skips scanning, parsing and resolving.
+ *
+ * The cache of {@code script.ark} is {@code script.arkc}, holding the
+ * SHA-256 hash of the source it was made from and the statements with
+ * their resolved depths, slots and frame sizes. Each distinct type and
+ * lexeme of token is written once, with its literal only when the scanner
+ * would not read the same one from the lexeme; a token is then the number
+ * of its kind and, when it moved to another line, the change of line.
+ * Strings are likewise written once. Global cells are written as names and
+ * bound again on load, in the runner's default table, since the cell of a
+ * name depends on the order names are first seen in it.
+ *
+ * A cache that is stale, unreadable or of another format is ignored.
+ */
+final class AstCache {
+
+  private static final int MAGIC = 0x41524b43; // "ARKC"
+
+  /**
+   * Bumped whenever the AST, the token types or this encoding changes.
+   */
+  private static final int FORMAT = 2;
+
+  private AstCache() {}
+
+  static Path pathFor(Path source) {
+    return source.resolveSibling(source.getFileName() + "c");
+  }
+
+  /**
+   * The cached statements of {@code source}, or null when the cache is
+   * missing or was not made from exactly these bytes.
+   */
+  static List<Stmt> load(Path source, byte[] bytes) {
+    try {
+      byte[] cache = Files.readAllBytes(pathFor(source));
+      Reader header = new Reader(cache);
+      if (header.readInt() != MAGIC || header.readInt() != FORMAT
+          || !Arrays.equals(header.readBytes(), hash(bytes))) {
+        return null;
+      }
+      return new Reader(inflate(cache, header.position)).readStmts();
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes the cache of {@code source}. Failing to, for instance in a
+   * read-only directory, is not an error: the script is parsed next time.
+   */
+  static void store(Path source, byte[] bytes, List<Stmt> statements) {
+    Path cache = pathFor(source);
+    try {
+      Writer header = new Writer();
+      header.writeInt(MAGIC);
+      header.writeInt(FORMAT);
+      header.writeBytes(hash(bytes));
+      Writer body = new Writer();
+      body.writeStmts(statements);
+
+      Path temp = Files.createTempFile(cache.toAbsolutePath().getParent(),
+          cache.getFileName().toString(), ".tmp");
+      try {
+        try (OutputStream out = Files.newOutputStream(temp)) {
+          out.write(header.out, 0, header.size);
+          deflate(body.out, body.size, out);
+        }
+        copyPermissions(source, temp);
+        Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException | RuntimeException e) {
+      // leave the script uncached
+    }
+  }
+
+  /*
+  The encoded statements are compressed, favouring speed over size as the
+  cache is written on a run that also parses.
+   */
+  private static void deflate(byte[] bytes, int length, OutputStream out) throws IOException {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, 1 << 16);
+      deflated.write(bytes, 0, length);
+      deflated.finish();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(byte[] bytes, int offset) {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(bytes, offset, bytes.length - offset);
+      byte[] out = new byte[Math.max(1 << 12, (bytes.length - offset) * 4)];
+      int size = 0;
+      while (!inflater.finished()) {
+        if (size == out.length) out = Arrays.copyOf(out, size * 2);
+        int count = inflater.inflate(out, size, out.length - size);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IllegalStateException("Truncated cache.");
+        }
+        size += count;
+      }
+      return Arrays.copyOf(out, size);
+    } catch (DataFormatException e) {
+      throw new IllegalStateException(e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /*
+  Temporary files are made readable by their owner only; the cache is given
+  the permissions of its source instead, where the file system has them.
+   */
+  private static void copyPermissions(Path source, Path target) throws IOException {
+    try {
+      Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
+    } catch (UnsupportedOperationException e) {
+      // not a POSIX file system
+    }
+  }
+
+  private static byte[] hash(byte[] bytes) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(bytes);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /*
+  Node tags, in the order the nodes are declared. 0 stands for null.
+   */
+  private static final int ASSIGN = 1, OPERATION = 2, BINARY = 3, UNARY = 4,
+      LITERAL = 5, VARIABLE = 6, TERNARY = 7, LAMBDA = 8, ARRAY = 9, DICT = 10,
+      STR = 11, CHAR = 12, INDEX_GET = 13, INDEX_SET = 14, RANGE = 15, PIPE = 16;
+  private static final int BLOCK = 1, EXPRESSION = 2, IF = 3, WHILE = 4,
+      FOR_IN = 5, PRINT = 6, SEND = 7, LET = 8, BREAK = 9;
+
+  /*
+  Literal tags.
+   */
+  private static final int NIL = 0, TRUE = 1, FALSE = 2, INT = 3, DOUBLE = 4,
+      STRING = 5, CHARACTER = 6;
+
+  /**
+   * The literal the scanner reads from a token of this type and lexeme, as
+   * {@link TokenBuffer#literal} does.
+   */
+  private static Object scanned(TokenType type, String lexeme) {
+    if (lexeme.isEmpty()) return null;
+    char first = lexeme.charAt(0);
+    if ((first >= 'a' && first <= 'z') || (first >= 'A' && first <= 'Z') || first == '_') {
+      return null;
+    }
+    try {
+      switch (type) {
+        case STRING: return lexeme.substring(1, lexeme.length() - 1);
+        case CHAR: return lexeme.charAt(1);
+        case INT: return Integer.parseInt(lexeme);
+        case DOUBLE: return Double.parseDouble(lexeme);
+        default: return null;
+      }
+    } catch (RuntimeException e) {
+      // not a lexeme the scanner makes; the writer then stores the literal
+      return null;
+    }
+  }
+
+  /**
+   * Encodes statements. Declarations outside any block or lambda are global,
+   * so the writer tracks its scope depth as the resolver did.
+   */
+  private static class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    byte[] out = new byte[1 << 12];
+    int size = 0;
+    private final Map<TokenType, Map<String, Integer>> kinds = new EnumMap<>(TokenType.class);
+    private int kindCount = 0;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private int scopeDepth = 0;
+    private int line = 0;
+
+    void writeStmts(List<Stmt> statements) {
+      writeCount(statements);
+      if (statements != null) {
+        for (Stmt statement : statements) writeStmt(statement);
+      }
+    }
+
+    private void writeExprs(List<Expr> exprs) {
+      writeCount(exprs);
+      if (exprs != null) {
+        for (Expr expr : exprs) writeExpr(expr);
+      }
+    }
+
+    private void writeTokens(List<Token> list) {
+      writeCount(list);
+      if (list != null) {
+        for (Token token : list) writeToken(token);
+      }
+    }
+
+    /*
+    Size plus one, so that 0 is a null list.
+     */
+    private void writeCount(List<?> list) {
+      writeVarInt(list == null ? 0 : list.size() + 1);
+    }
+
+    private void writeStmt(Stmt stmt) {
+      if (stmt == null) {
+        writeVarInt(0);
+      } else {
+        stmt.accept(this);
+      }
+    }
+
+    private void writeExpr(Expr expr) {
+      if (expr == null) {
+        writeVarInt(0);
+      } else {
+        expr.accept(this);
+      }
+    }
+
+    /*
+    A token is 0 for null, otherwise its kind number plus one, shifted left
+    and with the low bit set when its line differs from the last token's.
+    The next unused kind number introduces a new kind: its type, lexeme and,
+    unless the scanner would read it from the lexeme, literal. The change of
+    line follows, zigzag-encoded.
+     */
+    private void writeToken(Token token) {
+      if (token == null) {
+        writeVarInt(0);
+        return;
+      }
+      Map<String, Integer> ofType = kinds.computeIfAbsent(token.type, t -> new HashMap<>());
+      Integer kind = ofType.get(token.lexeme);
+      boolean known = kind != null;
+      if (!known) {
+        kind = kindCount++;
+        ofType.put(token.lexeme, kind);
+      }
+      int delta = token.line - line;
+      writeVarInt((kind + 1) << 1 | (delta != 0 ? 1 : 0));
+      if (!known) {
+        // the type, with the low bit set when the literal is the scanned one
+        boolean scanned = Objects.equals(token.literal, scanned(token.type, token.lexeme));
+        writeVarInt(token.type.ordinal() << 1 | (scanned ? 1 : 0));
+        writeBytes(token.lexeme.getBytes(StandardCharsets.UTF_8));
+        if (!scanned) writeLiteral(token.literal);
+      }
+      if (delta != 0) {
+        writeVarInt(delta << 1 ^ delta >> 31);
+        line = token.line;
+      }
+    }
+
+    /*
+    A string is 0 for null, otherwise its number plus one. The next unused
+    number introduces a new string, whose bytes follow.
+     */
+    private void writeString(String string) {
+      if (string == null) {
+        writeVarInt(0);
+        return;
+      }
+      Integer index = strings.get(string);
+      if (index != null) {
+        writeVarInt(index + 1);
+        return;
+      }
+      index = strings.size();
+      strings.put(string, index);
+      writeVarInt(index + 1);
+      writeBytes(string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeLiteral(Object value) {
+      if (value == null) {
+        writeVarInt(NIL);
+      } else if (value instanceof Boolean) {
+        writeVarInt((Boolean) value ? TRUE : FALSE);
+      } else if (value instanceof Integer) {
+        int i = (Integer) value;
+        writeVarInt(INT);
+        writeVarInt(i << 1 ^ i >> 31);
+      } else if (value instanceof Double) {
+        writeVarInt(DOUBLE);
+        long bits = Double.doubleToRawLongBits((Double) value);
+        writeInt((int) (bits >>> 32));
+        writeInt((int) bits);
+      } else if (value instanceof String) {
+        writeVarInt(STRING);
+        writeString((String) value);
+      } else if (value instanceof Character) {
+        writeVarInt(CHARACTER);
+        writeVarInt((Character) value);
+      } else {
+        throw new IllegalArgumentException("Cannot cache literal " + value);
+      }
+    }
+
+    /*
+    A slot declared at the top level is a global cell, found again by name.
+     */
+    private void writeDeclared(int slot) {
+      if (scopeDepth > 0) writeVarInt(slot);
+    }
+
+    private void writeResolved(int depth, int slot) {
+      writeVarInt(depth + 1);
+      if (depth >= 0) writeVarInt(slot);
+    }
+
+    void writeBytes(byte[] bytes) {
+      writeVarInt(bytes.length);
+      reserve(bytes.length);
+      System.arraycopy(bytes, 0, out, size, bytes.length);
+      size += bytes.length;
+    }
+
+    void writeInt(int value) {
+      reserve(4);
+      out[size++] = (byte) (value >>> 24);
+      out[size++] = (byte) (value >>> 16);
+      out[size++] = (byte) (value >>> 8);
+      out[size++] = (byte) value;
+    }
+
+    private void writeVarInt(int value) {
+      reserve(5);
+      while ((value & ~0x7f) != 0) {
+        out[size++] = (byte) ((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      out[size++] = (byte) value;
+    }
+
+    private void reserve(int count) {
+      if (size + count > out.length) {
+        out = Arrays.copyOf(out, Math.max(out.length * 2, size + count));
+      }
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+      writeVarInt(ASSIGN);
+      writeToken(expr.name);
+      writeExpr(expr.value);
+      writeResolved(expr.depth, expr.slot);
+      return null;
+    }
+
+    @Override
+    public Void visitOperationExpr(Expr.Operation expr) {
+      writeVarInt(OPERATION);
+      writeToken(expr.token);
+      writeExpr(expr.target);
+      writeExprs(expr.arguments);
+      return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+      writeVarInt(BINARY);
+      writeToken(expr.operator);
+      writeExpr(expr.left);
+      writeExpr(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+      writeVarInt(UNARY);
+      writeToken(expr.operator);
+      writeExpr(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+      writeVarInt(LITERAL);
+      writeLiteral(expr.value);
+      return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+      writeVarInt(VARIABLE);
+      writeToken(expr.name);
+      writeResolved(expr.depth, expr.slot);
+      return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+      writeVarInt(TERNARY);
+      writeExpr(expr.condition);
+      writeExpr(expr.expr1);
+      writeExpr(expr.expr2);
+      return null;
+    }
+
+    @Override
+    public Void visitLambdaExpr(Expr.Lambda expr) {
+      writeVarInt(LAMBDA);
+      writeToken(expr.name);
+      if (expr.name != null) writeDeclared(expr.slot);
+      writeTokens(expr.parameters);
+      ++scopeDepth;
+      writeStmts(expr.body);
+      --scopeDepth;
+      writeVarInt(expr.frameSize);
+      return null;
+    }
+
+    @Override
+    public Void visitArrayExpr(Expr.Array expr) {
+      writeVarInt(ARRAY);
+      writeToken(expr.bracket);
+      writeExprs(expr.items);
+      return null;
+    }
+
+    @Override
+    public Void visitDictExpr(Expr.Dict expr) {
+      writeVarInt(DICT);
+      writeToken(expr.token);
+      writeExprs(expr.keys);
+      writeExprs(expr.values);
+      return null;
+    }
+
+    @Override
+    public Void visitStrExpr(Expr.Str expr) {
+      writeVarInt(STR);
+      writeToken(expr.token);
+      // mostly the literal of its token
+      if (expr.token != null && expr.str.equals(expr.token.literal)) {
+        writeVarInt(0);
+      } else {
+        writeVarInt(1);
+        writeString(expr.str);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitCharExpr(Expr.Char expr) {
+      writeVarInt(CHAR);
+      writeToken(expr.token);
+      writeVarInt(expr.c);
+      return null;
+    }
+
+    @Override
+    public Void visitIndexGetExpr(Expr.IndexGet expr) {
+      writeVarInt(INDEX_GET);
+      writeExpr(expr.indexee);
+      writeToken(expr.token);
+      writeExpr(expr.index);
+      return null;
+    }
+
+    @Override
+    public Void visitIndexSetExpr(Expr.IndexSet expr) {
+      writeVarInt(INDEX_SET);
+      writeExpr(expr.indexee);
+      writeToken(expr.token);
+      writeExpr(expr.index);
+      writeExpr(expr.value);
+      return null;
+    }
+
+    @Override
+    public Void visitRangeExpr(Expr.Range expr) {
+      writeVarInt(RANGE);
+      writeExpr(expr.lower);
+      writeExpr(expr.upper);
+      writeToken(expr.token);
+      writeVarInt(expr.closed ? 1 : 0);
+      return null;
+    }
+
+    @Override
+    public Void visitPipeExpr(Expr.Pipe expr) {
+      writeVarInt(PIPE);
+      writeExpr(expr.source);
+      writeToken(expr.token);
+      writeExpr(expr.stage);
+      writeExprs(expr.arguments);
+      writeVarInt(expr.filter ? 1 : 0);
+      return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+      writeVarInt(BLOCK);
+      ++scopeDepth;
+      writeStmts(stmt.statements);
+      --scopeDepth;
+      writeVarInt(stmt.frameSize);
+      return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+      writeVarInt(EXPRESSION);
+      writeExpr(stmt.expression);
+      return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+      writeVarInt(IF);
+      writeExpr(stmt.condition);
+      writeStmt(stmt.thenBranch);
+      writeStmt(stmt.elseBranch);
+      return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+      writeVarInt(WHILE);
+      writeExpr(stmt.condition);
+      writeStmt(stmt.body);
+      return null;
+    }
+
+    @Override
+    public Void visitForInStmt(Stmt.ForIn stmt) {
+      writeVarInt(FOR_IN);
+      writeToken(stmt.token);
+      writeToken(stmt.itemIterator);
+      writeDeclared(stmt.itemSlot);
+      writeToken(stmt.indexIterator);
+      if (stmt.indexIterator != null) writeDeclared(stmt.indexSlot);
+      writeExpr(stmt.enumerable);
+      writeStmt(stmt.body);
+      return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+      writeVarInt(PRINT);
+      writeExpr(stmt.expression);
+      return null;
+    }
+
+    @Override
+    public Void visitSendStmt(Stmt.Send stmt) {
+      writeVarInt(SEND);
+      writeToken(stmt.keyword);
+      writeExpr(stmt.value);
+      writeVarInt(stmt.tail ? 1 : 0);
+      return null;
+    }
+
+    @Override
+    public Void visitLetStmt(Stmt.Let stmt) {
+      writeVarInt(LET);
+      writeTokens(stmt.names);
+      writeExprs(stmt.initializers);
+      for (int slot : stmt.slots) writeDeclared(slot);
+      return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+      writeVarInt(BREAK);
+      writeToken(stmt.keyword);
+      return null;
+    }
+  }
+
+  /**
+   * Decodes what the {@link Writer} wrote, in the same order.
+   */
+  private static class Reader {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final byte[] in;
+    int position = 0;
+    private final List<Token> kinds = new ArrayList<>();
+    private final List<String> strings = new ArrayList<>();
+    private int scopeDepth = 0;
+    private int line = 0;
+
+    Reader(byte[] in) {
+      this.in = in;
+    }
+
+    List<Stmt> readStmts() {
+      int count = readVarInt() - 1;
+      if (count < 0) return null;
+      List<Stmt> statements = new ArrayList<>(count);
+      for (int i = 0; i < count; ++i) statements.add(readStmt());
+      return statements;
+    }
+
+    private List<Expr> readExprs() {
+      int count = readVarInt() - 1;
+      if (count < 0) return null;
+      List<Expr> exprs = new ArrayList<>(count);
+      for (int i = 0; i < count; ++i) exprs.add(readExpr());
+      return exprs;
+    }
+
+    private List<Token> readTokens() {
+      int count = readVarInt() - 1;
+      if (count < 0) return null;
+      List<Token> list = new ArrayList<>(count);
+      for (int i = 0; i < count; ++i) list.add(readToken());
+      return list;
+    }
+
+    private Stmt readStmt() {
+      int tag = readVarInt();
+      switch (tag) {
+        case 0:
+          return null;
+        case BLOCK: {
+          ++scopeDepth;
+          Stmt.Block stmt = new Stmt.Block(readStmts());
+          --scopeDepth;
+          stmt.frameSize = readVarInt();
+          return stmt;
+        }
+        case EXPRESSION:
+          return new Stmt.Expression(readExpr());
+        case IF:
+          return new Stmt.If(readExpr(), readStmt(), readStmt());
+        case WHILE:
+          return new Stmt.While(readExpr(), readStmt());
+        case FOR_IN: {
+          Token token = readToken();
+          Token item = readToken();
+          int itemSlot = readDeclared(item);
+          Token index = readToken();
+          int indexSlot = index != null ? readDeclared(index) : -1;
+          Stmt.ForIn stmt = new Stmt.ForIn(token, item, index, readExpr(), readStmt());
+          stmt.itemSlot = itemSlot;
+          stmt.indexSlot = indexSlot;
+          return stmt;
+        }
+        case PRINT:
+          return new Stmt.Print(readExpr());
+        case SEND: {
+          Stmt.Send stmt = new Stmt.Send(readToken(), readExpr());
+          stmt.tail = readVarInt() != 0;
+          return stmt;
+        }
+        case LET: {
+          Stmt.Let stmt = new Stmt.Let(readTokens(), readExprs());
+          stmt.slots = new int[stmt.names.size()];
+          for (int i = 0; i < stmt.slots.length; ++i) {
+            stmt.slots[i] = readDeclared(stmt.names.get(i));
+          }
+          return stmt;
+        }
+        case BREAK:
+          return new Stmt.Break(readToken());
+        default:
+          throw new IllegalStateException("Bad statement tag " + tag);
+      }
+    }
+
+    private Expr readExpr() {
+      int tag = readVarInt();
+      switch (tag) {
+        case 0:
+          return null;
+        case ASSIGN: {
+          Expr.Assign expr = new Expr.Assign(readToken(), readExpr());
+          expr.depth = readVarInt() - 1;
+          expr.slot = readResolved(expr.depth, expr.name);
+          return expr;
+        }
+        case OPERATION:
+          return new Expr.Operation(readToken(), readExpr(), readExprs());
+        case BINARY:
+          return new Expr.Binary(readToken(), readExpr(), readExpr());
+        case UNARY:
+          return new Expr.Unary(readToken(), readExpr());
+        case LITERAL:
+          return new Expr.Literal(readLiteral());
+        case VARIABLE: {
+          Expr.Variable expr = new Expr.Variable(readToken());
+          expr.depth = readVarInt() - 1;
+          expr.slot = readResolved(expr.depth, expr.name);
+          return expr;
+        }
+        case TERNARY:
+          return new Expr.Ternary(readExpr(), readExpr(), readExpr());
+        case LAMBDA: {
+          Token name = readToken();
+          int slot = name != null ? readDeclared(name) : -1;
+          List<Token> parameters = readTokens();
+          ++scopeDepth;
+          Expr.Lambda expr = new Expr.Lambda(name, parameters, readStmts());
+          --scopeDepth;
+          expr.slot = slot;
+          expr.frameSize = readVarInt();
+          return expr;
+        }
+        case ARRAY:
+          return new Expr.Array(readToken(), readExprs());
+        case DICT:
+          return new Expr.Dict(readToken(), readExprs(), readExprs());
+        case STR: {
+          Token token = readToken();
+          String str = readVarInt() == 0 ? (String) token.literal : readString();
+          return new Expr.Str(token, str);
+        }
+        case CHAR:
+          return new Expr.Char(readToken(), (char) readVarInt());
+        case INDEX_GET:
+          return new Expr.IndexGet(readExpr(), readToken(), readExpr());
+        case INDEX_SET:
+          return new Expr.IndexSet(readExpr(), readToken(), readExpr(), readExpr());
+        case RANGE:
+          return new Expr.Range(readExpr(), readExpr(), readToken(), readVarInt() != 0);
+        case PIPE:
+          return new Expr.Pipe(readExpr(), readToken(), readExpr(), readExprs(),
+              readVarInt() != 0);
+        default:
+          throw new IllegalStateException("Bad expression tag " + tag);
+      }
+    }
+
+    private Token readToken() {
+      int word = readVarInt();
+      if (word == 0) return null;
+      int index = (word >>> 1) - 1;
+      Token kind;
+      if (index == kinds.size()) {
+        int typeWord = readVarInt();
+        TokenType type = TYPES[typeWord >>> 1];
+        String lexeme = new String(readBytes(), StandardCharsets.UTF_8);
+        Object literal = (typeWord & 1) != 0 ? scanned(type, lexeme) : readLiteral();
+        kind = new Token(type, lexeme, literal, 0);
+        kinds.add(kind);
+      } else {
+        kind = kinds.get(index);
+      }
+      if ((word & 1) != 0) {
+        int delta = readVarInt();
+        line += delta >>> 1 ^ -(delta & 1);
+      }
+      return new Token(kind.type, kind.lexeme, kind.literal, line);
+    }
+
+    private String readString() {
+      int word = readVarInt();
+      if (word == 0) return null;
+      if (word <= strings.size()) return strings.get(word - 1);
+      String string = new String(readBytes(), StandardCharsets.UTF_8);
+      strings.add(string);
+      return string;
+    }
+
+    private Object readLiteral() {
+      int tag = readVarInt();
+      switch (tag) {
+        case NIL:
+          return null;
+        case TRUE:
+          return true;
+        case FALSE:
+          return false;
+        case INT: {
+          int zigzag = readVarInt();
+          return zigzag >>> 1 ^ -(zigzag & 1);
+        }
+        case DOUBLE: {
+          long high = readInt();
+          return Double.longBitsToDouble(high << 32 | (readInt() & 0xffffffffL));
+        }
+        case STRING:
+          return readString();
+        case CHARACTER:
+          return (char) readVarInt();
+        default:
+          throw new IllegalStateException("Bad literal tag " + tag);
+      }
+    }
+
+    private int readDeclared(Token name) {
+      return scopeDepth > 0 ? readVarInt() : Globals.DEFAULT.index(name.lexeme);
+    }
+
+    private int readResolved(int depth, Token name) {
+      return depth >= 0 ? readVarInt() : Globals.DEFAULT.index(name.lexeme);
+    }
+
+    byte[] readBytes() {
+      int length = readVarInt();
+      if (length > in.length - position) {
+        throw new IllegalStateException("Truncated cache.");
+      }
+      byte[] bytes = Arrays.copyOfRange(in, position, position + length);
+      position += length;
+      return bytes;
+    }
+
+    int readInt() {
+      int value = 0;
+      for (int i = 0; i < 4; ++i) {
+        value = value << 8 | (in[position++] & 0xff);
+      }
+      return value;
+    }
+
+    private int readVarInt() {
+      int value = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = in[position++];
+        value |= (b & 0x7f) << shift;
+        if (b >= 0) return value;
+      }
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package org.arklang.lang;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Executable state of an {@link Expr.Binary}, specialised on the operand
+ * types seen at that site.
+ *
+ * A site starts out uninitialized. Its first evaluation rewrites it to a node
+ * for the observed types (int/int, double, string concatenation), which
+ * evaluates without going through the generic type dispatch in
+ * {@link Operators}. Such a node guards its operand types. When a guard fails,
+ * the site deoptimizes to the generic node for good, so that polymorphic sites
+ * do not keep rewriting themselves.
+ *
+ * An int node reads operands that index an int array without boxing them.
+ */
+abstract class BinaryNode {
+
+  abstract Object execute(Expr.Binary expr, Object left, Object right);
+
+  /**
+   * Evaluates the operands of {@code expr} and executes this node on them.
+   */
+  Object evaluate(Interpreter interpreter, Expr.Binary expr) {
+    Object left = interpreter.evaluate(expr.left);
+    Object right = interpreter.evaluate(expr.right);
+    return execute(expr, left, right);
+  }
+
+  static final BinaryNode UNINITIALIZED = new BinaryNode() {
+    @Override
+    Object execute(Expr.Binary expr, Object left, Object right) {
+      BinaryNode node = specialize(expr.operator.type, left, right);
+      expr.node = node;
+      return node.execute(expr, left, right);
+    }
+  };
+
+  static final BinaryNode GENERIC = new BinaryNode() {
+    @Override
+    Object execute(Expr.Binary expr, Object left, Object right) {
+      return Operators.binary(expr.operator, left, right);
+    }
+  };
+
+  private static BinaryNode specialize(TokenType operator, Object left, Object right) {
+    if (left instanceof Integer && right instanceof Integer) {
+      BinaryNode node = intNodes.get(operator);
+      if (node != null) return node;
+    } else if (left instanceof ArkString || right instanceof ArkString) {
+      if (operator == TokenType.PLUS) return CONCAT;
+    } else if (left instanceof Number && right instanceof Number) {
+      BinaryNode node = doubleNodes.get(operator);
+      if (node != null) return node;
+    }
+    return GENERIC;
+  }
+
+  private static Object deoptimize(Expr.Binary expr, Object left, Object right) {
+    expr.node = GENERIC;
+    return GENERIC.execute(expr, left, right);
+  }
+
+  /*
+  Specialisations
+   */
+  private interface IntOp {
+    Object apply(int left, int right);
+  }
+
+  private interface DoubleOp {
+    Object apply(double left, double right);
+  }
+
+  private static class IntNode extends BinaryNode {
+    private final IntOp op;
+
+    IntNode(IntOp op) {
+      this.op = op;
+    }
+
+    @Override
+    Object execute(Expr.Binary expr, Object left, Object right) {
+      if (left instanceof Integer && right instanceof Integer) {
+        return op.apply((Integer) left, (Integer) right);
+      }
+      return deoptimize(expr, left, right);
+    }
+
+    @Override
+    Object evaluate(Interpreter interpreter, Expr.Binary expr) {
+      if (!(expr.left instanceof Expr.IndexGet) && !(expr.right instanceof Expr.IndexGet)) {
+        return super.evaluate(interpreter, expr);
+      }
+
+      int l = 0, r = 0;
+      Object left = null, right = null;
+      boolean leftBoxed = true, rightBoxed = true;
+      if (expr.left instanceof Expr.IndexGet) {
+        Expr.IndexGet get = (Expr.IndexGet) expr.left;
+        Object indexee = interpreter.evaluate(get.indexee);
+        Object index = interpreter.evaluate(get.index);
+        if (holdsInts(indexee)) {
+          l = ((ArkArray) indexee).intAt(get.token, index);
+          leftBoxed = false;
+        } else {
+          left = Operators.indexGet(get.token, indexee, index);
+        }
+      } else {
+        left = interpreter.evaluate(expr.left);
+      }
+      if (expr.right instanceof Expr.IndexGet) {
+        Expr.IndexGet get = (Expr.IndexGet) expr.right;
+        Object indexee = interpreter.evaluate(get.indexee);
+        Object index = interpreter.evaluate(get.index);
+        if (holdsInts(indexee)) {
+          r = ((ArkArray) indexee).intAt(get.token, index);
+          rightBoxed = false;
+        } else {
+          right = Operators.indexGet(get.token, indexee, index);
+        }
+      } else {
+        right = interpreter.evaluate(expr.right);
+      }
+
+      if ((leftBoxed && !(left instanceof Integer)) || (rightBoxed && !(right instanceof Integer))) {
+        return deoptimize(expr, leftBoxed ? left : l, rightBoxed ? right : r);
+      }
+      return op.apply(leftBoxed ? (Integer) left : l, rightBoxed ? (Integer) right : r);
+    }
+
+    private static boolean holdsInts(Object indexee) {
+      return indexee instanceof ArkArray && ((ArkArray) indexee).holdsInts();
+    }
+  }
+
+  /**
+   * Number operands where at least one is not an Integer, promoted to double
+   * exactly like {@link Operators} does.
+   */
+  private static class DoubleNode extends BinaryNode {
+    private final DoubleOp op;
+
+    DoubleNode(DoubleOp op) {
+      this.op = op;
+    }
+
+    @Override
+    Object execute(Expr.Binary expr, Object left, Object right) {
+      if (left instanceof Double && right instanceof Double) {
+        return op.apply((Double) left, (Double) right);
+      }
+      if (left instanceof Number && right instanceof Number
+          && !(left instanceof Integer && right instanceof Integer)) {
+        return op.apply(((Number) left).doubleValue(), ((Number) right).doubleValue());
+      }
+      return deoptimize(expr, left, right);
+    }
+  }
+
+  private static final BinaryNode CONCAT = new BinaryNode() {
+    @Override
+    Object execute(Expr.Binary expr, Object left, Object right) {
+      if (left instanceof ArkString || right instanceof ArkString) {
+        return ArkString.concat(left, right);
+      }
+      return deoptimize(expr, left, right);
+    }
+  };
+
+  private static final Map<TokenType, BinaryNode> intNodes = new EnumMap<>(TokenType.class);
+  private static final Map<TokenType, BinaryNode> doubleNodes = new EnumMap<>(TokenType.class);
+
+  static {
+    intNodes.put(TokenType.PLUS, new IntNode((l, r) -> l + r));
+    intNodes.put(TokenType.MINUS, new IntNode((l, r) -> l - r));
+    intNodes.put(TokenType.STAR, new IntNode((l, r) -> l * r));
+    intNodes.put(TokenType.SLASH, new IntNode((l, r) -> l / r));
+    intNodes.put(TokenType.PERCENT, new IntNode((l, r) -> l % r));
+    intNodes.put(TokenType.STAR_STAR, new IntNode((l, r) -> (int) Math.pow(l, r)));
+    intNodes.put(TokenType.GREATER, new IntNode((l, r) -> l > r));
+    intNodes.put(TokenType.GREATER_EQUAL, new IntNode((l, r) -> l >= r));
+    intNodes.put(TokenType.LESS, new IntNode((l, r) -> l < r));
+    intNodes.put(TokenType.LESS_EQUAL, new IntNode((l, r) -> l <= r));
+    intNodes.put(TokenType.EQUAL_EQUAL, new IntNode((l, r) -> l == r));
+    intNodes.put(TokenType.BANG_EQUAL, new IntNode((l, r) -> l != r));
+    intNodes.put(TokenType.AMPERSAND, new IntNode((l, r) -> l & r));
+    intNodes.put(TokenType.CARET, new IntNode((l, r) -> l ^ r));
+    intNodes.put(TokenType.PIPE, new IntNode((l, r) -> l | r));
+    intNodes.put(TokenType.LEFT_SHIFT, new IntNode((l, r) -> l << r));
+    intNodes.put(TokenType.RIGHT_SHIFT, new IntNode((l, r) -> l >> r));
+    intNodes.put(TokenType.U_RIGHT_SHIFT, new IntNode((l, r) -> l >>> r));
+
+    doubleNodes.put(TokenType.PLUS, new DoubleNode((l, r) -> l + r));
+    doubleNodes.put(TokenType.MINUS, new DoubleNode((l, r) -> l - r));
+    doubleNodes.put(TokenType.STAR, new DoubleNode((l, r) -> l * r));
+    doubleNodes.put(TokenType.SLASH, new DoubleNode((l, r) -> l / r));
+    doubleNodes.put(TokenType.PERCENT, new DoubleNode((l, r) -> l % r));
+    doubleNodes.put(TokenType.STAR_STAR, new DoubleNode(Math::pow));
+    doubleNodes.put(TokenType.GREATER, new DoubleNode((l, r) -> l > r));
+    doubleNodes.put(TokenType.GREATER_EQUAL, new DoubleNode((l, r) -> l >= r));
+    doubleNodes.put(TokenType.LESS, new DoubleNode((l, r) -> l < r));
+    doubleNodes.put(TokenType.LESS_EQUAL, new DoubleNode((l, r) -> l <= r));
+    doubleNodes.put(TokenType.EQUAL_EQUAL, new DoubleNode((l, r) -> l == r));
+    doubleNodes.put(TokenType.BANG_EQUAL, new DoubleNode((l, r) -> l != r));
+  }
+}
@@ -1,4 +0,0 @@
-package org.arklang.lang;
-
-public class BreakJump extends RuntimeException {
-}
@@ -0,0 +1,57 @@
+package org.arklang.lang;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A unit of compiled bytecode: the instruction stream, its constant pool
+ * and the source token of every instruction for error reporting.
+ */
+class Chunk {
+
+  int[] code = new int[64];
+  Token[] tokens = new Token[64];
+  Object[] constants;
+  int maxStack;
+  int count = 0;
+
+  private final List<Object> pool = new ArrayList<>();
+  private final Map<Object, Integer> poolIndices = new HashMap<>();
+
+  int write(int word, Token token) {
+    if (count == code.length) {
+      code = Arrays.copyOf(code, count * 2);
+      tokens = Arrays.copyOf(tokens, count * 2);
+    }
+    code[count] = word;
+    tokens[count] = token;
+    return count++;
+  }
+
+  int addConstant(Object value) {
+    // Functions are never shared, literal values are.
+    if (value instanceof VMFunction) {
+      pool.add(value);
+      return pool.size() - 1;
+    }
+
+    Integer index = poolIndices.get(value);
+    if (index == null) {
+      index = pool.size();
+      pool.add(value);
+      poolIndices.put(value, index);
+    }
+    return index;
+  }
+
+  Chunk finish(int maxStack) {
+    code = Arrays.copyOf(code, count);
+    tokens = Arrays.copyOf(tokens, count);
+    constants = pool.toArray();
+    this.maxStack = maxStack;
+    return this;
+  }
+}
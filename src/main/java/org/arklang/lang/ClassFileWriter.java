@@ -0,0 +1,307 @@
+package org.arklang.lang;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal writer for JVM class files, just enough for the {@link Jit}.
+ *
+ * Classes are emitted as version 49 (Java 5) so that the JVM verifies them
+ * by type inference and no stack map frames have to be computed.
+ */
+class ClassFileWriter {
+
+  /*
+  JVM opcodes used by the JIT
+   */
+  static final int ACONST_NULL = 0x01;
+  static final int ICONST_0 = 0x03;
+  static final int BIPUSH = 0x10;
+  static final int SIPUSH = 0x11;
+  static final int ILOAD = 0x15;
+  static final int ALOAD = 0x19;
+  static final int ISTORE = 0x36;
+  static final int ASTORE = 0x3a;
+  static final int AALOAD = 0x32;
+  static final int AASTORE = 0x53;
+  static final int POP = 0x57;
+  static final int DUP = 0x59;
+  static final int DUP_X2 = 0x5b;
+  static final int IINC = 0x84;
+  static final int IFEQ = 0x99;
+  static final int GOTO = 0xa7;
+  static final int ARETURN = 0xb0;
+  static final int RETURN = 0xb1;
+  static final int GETFIELD = 0xb4;
+  static final int INVOKESPECIAL = 0xb7;
+  static final int INVOKESTATIC = 0xb8;
+  static final int ANEWARRAY = 0xbd;
+  static final int CHECKCAST = 0xc0;
+
+  private static final int ACC_PUBLIC = 0x0001;
+  private static final int ACC_FINAL = 0x0010;
+  private static final int ACC_SUPER = 0x0020;
+
+  /**
+   * Thrown when generated code would exceed a class file limit.
+   */
+  static class LimitExceeded extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    LimitExceeded(String message) {
+      super(message);
+    }
+  }
+
+  static class Label {
+    private int position = -1;
+    private final List<Integer> branches = new ArrayList<>();
+  }
+
+  /**
+   * Bytecode of a single method body, tracking the operand stack depth.
+   */
+  class Code {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private int stack = 0;
+    private int maxStack = 0;
+    private int maxLocals;
+
+    Code(int maxLocals) {
+      this.maxLocals = maxLocals;
+    }
+
+    void op(int opcode, int stackEffect) {
+      bytes.write(opcode);
+      adjust(stackEffect);
+    }
+
+    void adjust(int stackEffect) {
+      stack += stackEffect;
+      if (stack > maxStack) maxStack = stack;
+    }
+
+    void aload(int local) {
+      if (local <= 3) {
+        op(0x2a + local, 1);
+      } else {
+        local(ALOAD, local, 1);
+      }
+    }
+
+    void local(int opcode, int local, int stackEffect) {
+      if (local > 0xff) {
+        throw new LimitExceeded("Too many locals.");
+      }
+      if (local >= maxLocals) maxLocals = local + 1;
+      op(opcode, stackEffect);
+      bytes.write(local);
+    }
+
+    void iinc(int local, int increment) {
+      local(IINC, local, 0);
+      bytes.write(increment);
+    }
+
+    void iconst(int value) {
+      if (value >= -1 && value <= 5) {
+        op(ICONST_0 + value, 1);
+      } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+        op(BIPUSH, 1);
+        bytes.write(value);
+      } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+        op(SIPUSH, 1);
+        u2(value);
+      } else {
+        throw new LimitExceeded("Integer operand too large.");
+      }
+    }
+
+    void type(int opcode, String internalName) {
+      op(opcode, 0);
+      u2(classRef(internalName));
+    }
+
+    void field(int opcode, String owner, String name, String descriptor, int stackEffect) {
+      op(opcode, stackEffect);
+      u2(fieldRef(owner, name, descriptor));
+    }
+
+    void invoke(int opcode, String owner, String name, String descriptor, int stackEffect) {
+      op(opcode, stackEffect);
+      u2(methodRef(owner, name, descriptor));
+    }
+
+    void jump(int opcode, Label label, int stackEffect) {
+      int at = bytes.size();
+      op(opcode, stackEffect);
+      label.branches.add(at);
+      u2(0);
+    }
+
+    void mark(Label label) {
+      label.position = bytes.size();
+    }
+
+    int stack() {
+      return stack;
+    }
+
+    void stack(int depth) {
+      stack = depth;
+    }
+
+    private void u2(int value) {
+      bytes.write((value >> 8) & 0xff);
+      bytes.write(value & 0xff);
+    }
+
+    byte[] resolve(List<Label> labels) {
+      byte[] code = bytes.toByteArray();
+      if (code.length > Short.MAX_VALUE) {
+        throw new LimitExceeded("Method too large.");
+      }
+      for (Label label : labels) {
+        for (int at : label.branches) {
+          int offset = label.position - at;
+          code[at + 1] = (byte) (offset >> 8);
+          code[at + 2] = (byte) offset;
+        }
+      }
+      return code;
+    }
+  }
+
+  private static class Method {
+    final int name;
+    final int descriptor;
+    final byte[] code;
+    final int maxStack;
+    final int maxLocals;
+
+    Method(int name, int descriptor, byte[] code, int maxStack, int maxLocals) {
+      this.name = name;
+      this.descriptor = descriptor;
+      this.code = code;
+      this.maxStack = maxStack;
+      this.maxLocals = maxLocals;
+    }
+  }
+
+  private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+  private final DataOutputStream poolOut = new DataOutputStream(pool);
+  private final Map<String, Integer> poolIndices = new HashMap<>();
+  private int poolCount = 1;
+  private final List<Method> methods = new ArrayList<>();
+  private final String name;
+  private final String superName;
+
+  ClassFileWriter(String name, String superName) {
+    this.name = name;
+    this.superName = superName;
+  }
+
+  Code code(int maxLocals) {
+    return new Code(maxLocals);
+  }
+
+  void method(String methodName, String descriptor, Code code, List<Label> labels) {
+    methods.add(new Method(utf8(methodName), utf8(descriptor),
+        code.resolve(labels), code.maxStack, code.maxLocals));
+  }
+
+  byte[] toByteArray() {
+    try {
+      int thisClass = classRef(name);
+      int superClass = classRef(superName);
+      int codeName = utf8("Code");
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0);
+      out.writeShort(49);
+      out.writeShort(poolCount);
+      poolOut.flush();
+      pool.writeTo(out);
+      out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      out.writeShort(0); // interfaces
+      out.writeShort(0); // fields
+      out.writeShort(methods.size());
+      for (Method method : methods) {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(method.name);
+        out.writeShort(method.descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + method.code.length);
+        out.writeShort(method.maxStack);
+        out.writeShort(method.maxLocals);
+        out.writeInt(method.code.length);
+        out.write(method.code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+      }
+      out.writeShort(0); // class attributes
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /*
+  Constant pool
+   */
+  private int entry(String key, int tag, int a, int b, String utf) {
+    Integer index = poolIndices.get(key);
+    if (index != null) return index;
+
+    try {
+      poolOut.writeByte(tag);
+      if (utf != null) {
+        poolOut.writeUTF(utf);
+      } else {
+        poolOut.writeShort(a);
+        if (b >= 0) poolOut.writeShort(b);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    if (poolCount == 0xffff) {
+      throw new LimitExceeded("Constant pool too large.");
+    }
+    poolIndices.put(key, poolCount);
+    return poolCount++;
+  }
+
+  private int utf8(String value) {
+    return entry("U" + value, 1, 0, 0, value);
+  }
+
+  private int classRef(String internalName) {
+    return entry("C" + internalName, 7, utf8(internalName), -1, null);
+  }
+
+  private int nameAndType(String memberName, String descriptor) {
+    return entry("N" + memberName + ":" + descriptor, 12,
+        utf8(memberName), utf8(descriptor), null);
+  }
+
+  private int fieldRef(String owner, String memberName, String descriptor) {
+    return entry("F" + owner + "." + memberName + ":" + descriptor, 9,
+        classRef(owner), nameAndType(memberName, descriptor), null);
+  }
+
+  private int methodRef(String owner, String memberName, String descriptor) {
+    return entry("M" + owner + "." + memberName + ":" + descriptor, 10,
+        classRef(owner), nameAndType(memberName, descriptor), null);
+  }
+}
@@ -0,0 +1,532 @@
+package org.arklang.lang;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Execution engine that converts resolved statements into a tree of Java
+ * closures once, then runs the closures.
+ *
+ * Everything the {@link Interpreter} re-decides on each visit is fixed at
+ * compile time: the operator, the resolved distance of a variable and
+ * literal values. Every node becomes a small lambda with its own call site.
+ */
+class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Eval>, Stmt.Visitor<ClosureCompiler.Exec> {
+
+  /**
+   * A compiled expression.
+   */
+  interface Eval {
+    Object eval(Environment env);
+  }
+
+  /**
+   * A compiled statement.
+   */
+  interface Exec {
+    Completion exec(Environment env);
+  }
+
+  private final Interpreter interpreter;
+  private final Environment globals = new Environment();
+
+  // Lambda being compiled: the frame slot after its locals, which holds the
+  // value it sends, and the number of blocks entered since its frame. Scripts
+  // on several threads share them, so top-level compiles hold the engine lock.
+  private int sentSlot = -1;
+  private int blockDepth = 0;
+
+  ClosureCompiler(Interpreter interpreter) {
+    this.interpreter = interpreter;
+    NativeFunctions.define(globals);
+  }
+
+  /**
+   * Runs statements on the engine's globals, reporting any runtime error.
+   * Returns false if a send or an error ended the script early.
+   */
+  boolean interpret(List<Stmt> statements, boolean prompt) {
+    try {
+      for (Stmt stmt : statements) {
+        if (prompt && stmt instanceof Stmt.Expression) {
+          Expr expr = ((Stmt.Expression) stmt).expression;
+          Object value = compileTop(expr).eval(globals);
+          if (value != null && !(expr instanceof Expr.Lambda)) {
+            System.out.println(value);
+          }
+        } else if (compileTop(stmt).exec(globals) == Completion.SEND) {
+          return false;
+        }
+      }
+      return true;
+    } catch (RuntimeError error) {
+      Ark.runtimeError(error);
+      return false;
+    }
+  }
+
+  Object evaluate(Expr expr) {
+    return compileTop(expr).eval(globals);
+  }
+
+  Object global(String name) {
+    return globals.get(new Token(TokenType.IDENTIFIER, name, null, 0));
+  }
+
+  /**
+   * Runs statements until one of them completes abruptly.
+   */
+  static Completion run(Exec[] statements, Environment env) {
+    for (Exec stmt : statements) {
+      Completion completion = stmt.exec(env);
+      if (completion != Completion.NORMAL) return completion;
+    }
+    return Completion.NORMAL;
+  }
+
+  private synchronized Eval compileTop(Expr expr) {
+    return compile(expr);
+  }
+
+  private synchronized Exec compileTop(Stmt stmt) {
+    return compile(stmt);
+  }
+
+  private Eval compile(Expr expr) {
+    return expr.accept(this);
+  }
+
+  private Exec compile(Stmt stmt) {
+    return stmt.accept(this);
+  }
+
+  private Exec[] compile(List<Stmt> stmts) {
+    Exec[] compiled = new Exec[stmts.size()];
+    for (int i = 0; i < compiled.length; ++i) {
+      compiled[i] = compile(stmts.get(i));
+    }
+    return compiled;
+  }
+
+  private Eval[] compileAll(List<Expr> exprs) {
+    Eval[] compiled = new Eval[exprs.size()];
+    for (int i = 0; i < compiled.length; ++i) {
+      compiled[i] = compile(exprs.get(i));
+    }
+    return compiled;
+  }
+
+  private static Object[] evalAll(Eval[] exprs, Environment env) {
+    Object[] values = new Object[exprs.length];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = exprs[i].eval(env);
+    }
+    return values;
+  }
+
+  /*
+  Expressions
+   */
+  @Override
+  public Eval visitAssignExpr(Expr.Assign expr) {
+    Token name = expr.name;
+    Eval value = compile(expr.value);
+    int slot = expr.slot;
+    if (expr.depth < 0) {
+      return env -> {
+        Object v = value.eval(env);
+        globals.assignGlobal(slot, name, v);
+        return v;
+      };
+    }
+    int d = expr.depth;
+    return env -> {
+      Object v = value.eval(env);
+      env.assignAt(d, slot, v);
+      return v;
+    };
+  }
+
+  @Override
+  public Eval visitOperationExpr(Expr.Operation expr) {
+    Token token = expr.token;
+    Eval target = compile(expr.target);
+    Eval[] arguments = compileAll(expr.arguments);
+    return env -> {
+      ArkCallable callable = Operators.checkCallable(token, target.eval(env));
+      Object[] args = evalAll(arguments, env);
+      Operators.checkArity(token, callable, args.length);
+      return call(token, callable, args);
+    };
+  }
+
+  @Override
+  public Eval visitBinaryExpr(Expr.Binary expr) {
+    Token op = expr.operator;
+    Eval l = compile(expr.left);
+    Eval r = compile(expr.right);
+    switch (op.type) {
+      case PLUS: return env -> Operators.add(op, l.eval(env), r.eval(env));
+      case MINUS: return env -> Operators.subtract(op, l.eval(env), r.eval(env));
+      case STAR: return env -> Operators.multiply(op, l.eval(env), r.eval(env));
+      case SLASH: return env -> Operators.divide(op, l.eval(env), r.eval(env));
+      case PERCENT: return env -> Operators.modulo(op, l.eval(env), r.eval(env));
+      case STAR_STAR: return env -> Operators.power(op, l.eval(env), r.eval(env));
+      case GREATER: return env -> Operators.greater(op, l.eval(env), r.eval(env));
+      case GREATER_EQUAL: return env -> Operators.greaterEqual(op, l.eval(env), r.eval(env));
+      case LESS: return env -> Operators.less(op, l.eval(env), r.eval(env));
+      case LESS_EQUAL: return env -> Operators.lessEqual(op, l.eval(env), r.eval(env));
+      case EQUAL_EQUAL: return env -> Operators.equal(op, l.eval(env), r.eval(env));
+      case BANG_EQUAL: return env -> Operators.notEqual(op, l.eval(env), r.eval(env));
+      case AMPERSAND: return env -> Operators.bitAnd(op, l.eval(env), r.eval(env));
+      case CARET: return env -> Operators.bitXor(op, l.eval(env), r.eval(env));
+      case PIPE: return env -> Operators.bitOr(op, l.eval(env), r.eval(env));
+      case LEFT_SHIFT: return env -> Operators.leftShift(op, l.eval(env), r.eval(env));
+      case RIGHT_SHIFT: return env -> Operators.rightShift(op, l.eval(env), r.eval(env));
+      case U_RIGHT_SHIFT: return env -> Operators.unsignedRightShift(op, l.eval(env), r.eval(env));
+      case AND: return env -> {
+        Object left = l.eval(env);
+        Object right = r.eval(env);
+        return Operators.isTruthy(left) && Operators.isTruthy(right);
+      };
+      case OR: return env -> {
+        Object left = l.eval(env);
+        Object right = r.eval(env);
+        return Operators.isTruthy(left) || Operators.isTruthy(right);
+      };
+      default: return env -> Operators.binary(op, l.eval(env), r.eval(env));
+    }
+  }
+
+  @Override
+  public Eval visitUnaryExpr(Expr.Unary expr) {
+    Token op = expr.operator;
+    Eval right = compile(expr.right);
+    switch (op.type) {
+      case BANG: return env -> !Operators.isTruthy(right.eval(env));
+      case MINUS: return env -> Operators.negate(op, right.eval(env));
+      case TILDE: return env -> Operators.bitNot(op, right.eval(env));
+      default: return env -> Operators.unary(op, right.eval(env));
+    }
+  }
+
+  @Override
+  public Eval visitLiteralExpr(Expr.Literal expr) {
+    Object value = expr.value;
+    return env -> value;
+  }
+
+  @Override
+  public Eval visitVariableExpr(Expr.Variable expr) {
+    Token name = expr.name;
+    int slot = expr.slot;
+    if (expr.depth < 0) {
+      return env -> globals.getGlobal(slot, name);
+    }
+    switch (expr.depth) {
+      case 0: return env -> env.slots[slot];
+      case 1: return env -> env.enclosing.slots[slot];
+      default:
+        int d = expr.depth;
+        return env -> env.getAt(d, slot);
+    }
+  }
+
+  @Override
+  public Eval visitTernaryExpr(Expr.Ternary expr) {
+    Eval condition = compile(expr.condition);
+    Eval expr1 = compile(expr.expr1);
+    Eval expr2 = compile(expr.expr2);
+    return env -> Operators.isTruthy(condition.eval(env)) ? expr1.eval(env) : expr2.eval(env);
+  }
+
+  @Override
+  public Eval visitLambdaExpr(Expr.Lambda expr) {
+    int arity = expr.parameters == null ? 0 : expr.parameters.size();
+    List<Stmt> statements = LazyBody.force(expr);
+    int frameSize = expr.frameSize;
+    int enclosingSentSlot = sentSlot, enclosingBlockDepth = blockDepth;
+    sentSlot = frameSize;
+    blockDepth = 0;
+    Exec[] body = compile(statements);
+    sentSlot = enclosingSentSlot;
+    blockDepth = enclosingBlockDepth;
+    if (expr.name == null) {
+      return env -> new ClosureLambda(arity, frameSize, body, env);
+    }
+    int slot = expr.slot;
+    return env -> {
+      ClosureLambda lambda = new ClosureLambda(arity, frameSize, body, env);
+      env.define(slot, lambda);
+      return lambda;
+    };
+  }
+
+  @Override
+  public Eval visitArrayExpr(Expr.Array expr) {
+    Eval[] items = compileAll(expr.items);
+    return env -> {
+      Object[] values = new Object[items.length];
+      for (int i = 0; i < items.length; ++i) values[i] = items[i].eval(env);
+      return new ArkArray(values);
+    };
+  }
+
+  @Override
+  public Eval visitDictExpr(Expr.Dict expr) {
+    Eval[] keys = compileAll(expr.keys);
+    Eval[] values = compileAll(expr.values);
+    Token token = expr.token;
+    return env -> {
+      Object[] entries = new Object[keys.length * 2];
+      for (int i = 0; i < keys.length; ++i) {
+        entries[2 * i] = keys[i].eval(env);
+        entries[2 * i + 1] = values[i].eval(env);
+      }
+      return Operators.dict(token, entries);
+    };
+  }
+
+  @Override
+  public Eval visitPipeExpr(Expr.Pipe expr) {
+    List<Expr.Pipe> pipes = Pipeline.chain(expr);
+    Eval source = compile(pipes.get(0).source);
+    int count = pipes.size();
+    Token[] tokens = new Token[count];
+    Eval[] callables = new Eval[count];
+    Eval[][] arguments = new Eval[count][];
+    boolean[] filters = new boolean[count];
+    for (int i = 0; i < count; ++i) {
+      Expr.Pipe pipe = pipes.get(i);
+      tokens[i] = pipe.token;
+      callables[i] = compile(pipe.stage);
+      arguments[i] = compileAll(pipe.arguments);
+      filters[i] = pipe.filter;
+    }
+    return env -> {
+      Object items = source.eval(env);
+      Pipeline.Stage[] stages = new Pipeline.Stage[count];
+      for (int i = 0; i < count; ++i) {
+        Object callable = callables[i].eval(env);
+        Object[] args = new Object[arguments[i].length];
+        for (int j = 0; j < args.length; ++j) args[j] = arguments[i][j].eval(env);
+        stages[i] = new Pipeline.Stage(tokens[i], callable, args, filters[i]);
+      }
+      return Pipeline.run(interpreter, items, stages);
+    };
+  }
+
+  @Override
+  public Eval visitStrExpr(Expr.Str expr) {
+    ArkString literal = ArkString.prototype(expr);
+    return env -> literal.share();
+  }
+
+  @Override
+  public Eval visitCharExpr(Expr.Char expr) {
+    Character c = expr.c;
+    return env -> c;
+  }
+
+  @Override
+  public Eval visitIndexGetExpr(Expr.IndexGet expr) {
+    Token token = expr.token;
+    Eval indexee = compile(expr.indexee);
+    Eval index = compile(expr.index);
+    return env -> {
+      Object target = indexee.eval(env);
+      return Operators.indexGet(token, target, index.eval(env));
+    };
+  }
+
+  @Override
+  public Eval visitIndexSetExpr(Expr.IndexSet expr) {
+    Token token = expr.token;
+    Eval indexee = compile(expr.indexee);
+    Eval index = compile(expr.index);
+    Eval value = compile(expr.value);
+    return env -> {
+      Object target = indexee.eval(env);
+      Object i = index.eval(env);
+      return Operators.indexSet(token, target, i, value.eval(env));
+    };
+  }
+
+  @Override
+  public Eval visitRangeExpr(Expr.Range expr) {
+    Token token = expr.token;
+    Eval lower = compile(expr.lower);
+    Eval upper = compile(expr.upper);
+    boolean closed = expr.closed;
+    return env -> {
+      Object l = lower.eval(env);
+      return Operators.range(token, l, upper.eval(env), closed);
+    };
+  }
+
+  /*
+  Statements
+   */
+  @Override
+  public Exec visitBlockStmt(Stmt.Block stmt) {
+    ++blockDepth;
+    Exec[] statements = compile(stmt.statements);
+    --blockDepth;
+    int frameSize = stmt.frameSize;
+    return env -> run(statements, new Environment(env, frameSize));
+  }
+
+  @Override
+  public Exec visitExpressionStmt(Stmt.Expression stmt) {
+    Eval expression = compile(stmt.expression);
+    return env -> {
+      expression.eval(env);
+      return Completion.NORMAL;
+    };
+  }
+
+  @Override
+  public Exec visitIfStmt(Stmt.If stmt) {
+    Eval condition = compile(stmt.condition);
+    Exec thenBranch = compile(stmt.thenBranch);
+    if (stmt.elseBranch == null) {
+      return env -> Operators.isTruthy(condition.eval(env))
+          ? thenBranch.exec(env)
+          : Completion.NORMAL;
+    }
+    Exec elseBranch = compile(stmt.elseBranch);
+    return env -> Operators.isTruthy(condition.eval(env))
+        ? thenBranch.exec(env)
+        : elseBranch.exec(env);
+  }
+
+  @Override
+  public Exec visitWhileStmt(Stmt.While stmt) {
+    Eval condition = compile(stmt.condition);
+    Exec body = compile(stmt.body);
+    return env -> {
+      while (Operators.isTruthy(condition.eval(env))) {
+        Completion completion = body.exec(env);
+        if (completion == Completion.BREAK) break;
+        if (completion == Completion.SEND) return completion;
+      }
+      return Completion.NORMAL;
+    };
+  }
+
+  @Override
+  public Exec visitForInStmt(Stmt.ForIn stmt) {
+    Token token = stmt.token;
+    int item = stmt.itemSlot;
+    int index = stmt.indexIterator == null ? -1 : stmt.indexSlot;
+    Eval enumerable = compile(stmt.enumerable);
+    Exec body = compile(stmt.body);
+    return env -> {
+      Object target = enumerable.eval(env);
+      if (!(target instanceof ArkEnumerable)) {
+        Ark.error(token, "for stmt target must be enumerable.");
+        return Completion.NORMAL;
+      }
+
+      int i = 0;
+      for (Object o : (ArkEnumerable<?>) target) {
+        env.define(item, o);
+        if (index >= 0) env.define(index, i++);
+
+        Completion completion = body.exec(env);
+        if (completion == Completion.BREAK) break;
+        if (completion == Completion.SEND) return completion;
+      }
+      return Completion.NORMAL;
+    };
+  }
+
+  @Override
+  public Exec visitPrintStmt(Stmt.Print stmt) {
+    Eval expression = compile(stmt.expression);
+    return env -> {
+      System.out.println(expression.eval(env));
+      return Completion.NORMAL;
+    };
+  }
+
+  @Override
+  public Exec visitSendStmt(Stmt.Send stmt) {
+    Eval value;
+    if (stmt.tail) {
+      Expr.Operation call = (Expr.Operation) stmt.value;
+      Token token = call.token;
+      Eval target = compile(call.target);
+      Eval[] arguments = compileAll(call.arguments);
+      value = env -> tailCall(token, target.eval(env), evalAll(arguments, env));
+    } else {
+      value = compile(stmt.value);
+    }
+
+    // The value is left in the sending lambda's own frame, so lambdas can
+    // run on several threads at once. A send outside any lambda ends the
+    // script and its value is dropped.
+    int slot = sentSlot, depth = blockDepth;
+    if (slot < 0) {
+      return env -> {
+        value.eval(env);
+        return Completion.SEND;
+      };
+    }
+    if (depth == 0) {
+      return env -> {
+        env.slots[slot] = value.eval(env);
+        return Completion.SEND;
+      };
+    }
+    return env -> {
+      Object result = value.eval(env);
+      env.ancestor(depth).slots[slot] = result;
+      return Completion.SEND;
+    };
+  }
+
+  /**
+   * Calls to closure lambdas in tail position are returned to the caller's
+   * trampoline in {@link ClosureLambda#invoke} instead of being made here.
+   */
+  private Object tailCall(Token token, Object target, Object[] args) {
+    ArkCallable callable = Operators.checkCallable(token, target);
+    Operators.checkArity(token, callable, args.length);
+    if (callable instanceof ClosureLambda) {
+      return new TailCall(callable, args);
+    }
+    return call(token, callable, args);
+  }
+
+  private Object call(Token token, ArkCallable callable, Object[] args) {
+    if (callable instanceof ClosureLambda) {
+      return ((ClosureLambda) callable).invoke(args);
+    }
+    List<Object> list = new ArrayList<>(args.length);
+    for (Object arg : args) list.add(arg);
+    return callable.call(interpreter, token, list);
+  }
+
+  @Override
+  public Exec visitLetStmt(Stmt.Let stmt) {
+    int count = stmt.names.size();
+    int[] slots = stmt.slots;
+    Eval[] initializers = new Eval[count];
+    for (int i = 0; i < count; ++i) {
+      Expr initializer = stmt.initializers.get(i);
+      initializers[i] = initializer == null ? null : compile(initializer);
+    }
+    return env -> {
+      for (int i = 0; i < count; ++i) {
+        env.define(slots[i], initializers[i] == null ? null : initializers[i].eval(env));
+      }
+      return Completion.NORMAL;
+    };
+  }
+
+  @Override
+  public Exec visitBreakStmt(Stmt.Break stmt) {
+    return env -> Completion.BREAK;
+  }
+}
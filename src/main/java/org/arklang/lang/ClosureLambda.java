@@ -0,0 +1,56 @@
+package org.arklang.lang;
+
+import java.util.List;
+
+/**
+ * Runtime value of a lambda under the closure compiler: the pre-compiled body
+ * paired with the environment it was created in.
+ */
+public class ClosureLambda implements ArkCallable {
+
+  private final int arity;
+  private final int frameSize;
+  private final ClosureCompiler.Exec[] body;
+  private final Environment closure;
+
+  ClosureLambda(int arity, int frameSize, ClosureCompiler.Exec[] body, Environment closure) {
+    this.arity = arity;
+    this.frameSize = frameSize;
+    this.body = body;
+    this.closure = closure;
+  }
+
+  @Override
+  public int arity() {
+    return arity;
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, List<Object> arguments) {
+    return invoke(arguments.toArray());
+  }
+
+  /**
+   * Calls the lambda, running any tail calls it sends in a loop here
+   * rather than on a growing Java stack.
+   */
+  Object invoke(Object[] arguments) {
+    Object result = execute(arguments);
+    while (result instanceof TailCall) {
+      TailCall call = (TailCall) result;
+      result = ((ClosureLambda) call.callee).execute(call.arguments);
+    }
+    return result;
+  }
+
+  private Object execute(Object[] arguments) {
+    // One slot past the locals receives the value the body sends.
+    Environment env = new Environment(closure, frameSize + 1);
+    System.arraycopy(arguments, 0, env.slots, 0, arity);
+
+    if (ClosureCompiler.run(body, env) == Completion.SEND) {
+      return env.slots[frameSize];
+    }
+    return null;
+  }
+}
@@ -0,0 +1,66 @@
+package org.arklang.lang;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown by {@link CompiledScript#compile} when the source has syntax or
+ * resolution errors. Each error is kept as a {@link Problem}, and the
+ * message lists them as the command line runner would print them.
+ */
+public class CompileError extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * A syntax or resolution error at a source line.
+   */
+  public static final class Problem {
+    private final int line;
+    private final String where;
+    private final String message;
+
+    Problem(int line, String where, String message) {
+      this.line = line;
+      this.where = where;
+      this.message = message;
+    }
+
+    public int line() {
+      return line;
+    }
+
+    public String message() {
+      return message;
+    }
+
+    @Override
+    public String toString() {
+      return "[line " + line + "] Error" + where + ": " + message;
+    }
+  }
+
+  private final List<Problem> problems;
+
+  public CompileError(String message) {
+    this(message, Collections.emptyList());
+  }
+
+  CompileError(String message, List<Problem> problems) {
+    super(describe(message, problems));
+    this.problems = Collections.unmodifiableList(new ArrayList<>(problems));
+  }
+
+  public List<Problem> problems() {
+    return problems;
+  }
+
+  private static String describe(String message, List<Problem> problems) {
+    StringBuilder description = new StringBuilder(message);
+    for (Problem problem : problems) {
+      description.append('\n').append(problem);
+    }
+    return description.toString();
+  }
+}
@@ -0,0 +1,21 @@
+package org.arklang.lang;
+
+/**
+ * Base class of lambda bodies compiled to JVM bytecode by the {@link Jit}.
+ *
+ * Generated subclasses are defined by their own class loader, so they may
+ * only touch public members; everything else goes through {@link JitRuntime}.
+ */
+public abstract class CompiledLambda {
+
+  /**
+   * Tokens, names and literal values referenced by the generated code.
+   */
+  protected final Object[] constants;
+
+  protected CompiledLambda(Object[] constants) {
+    this.constants = constants;
+  }
+
+  public abstract Object invoke(Interpreter interpreter, Environment closure, Object[] args);
+}
@@ -0,0 +1,106 @@
+package org.arklang.lang;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embedding API: a script scanned, parsed and resolved once, to be run any
+ * number of times, from any number of threads.
+ *
+ * <pre>
+ *   CompiledScript rules = CompiledScript.compile(source);
+ *   Object verdict = rules.run(Collections.singletonMap("order", order));
+ * </pre>
+ *
+ * Each run binds its inputs as globals before the script starts and
+ * returns the value of a top-level send, or nil. Strings, lists and maps
+ * given as inputs are converted to Ark strings, arrays and dicts.
+ */
+public final class CompiledScript {
+
+  private final Globals names;
+  private final List<Stmt> statements;
+  private final Environment template;
+
+  private CompiledScript(Globals names, List<Stmt> statements) {
+    this.names = names;
+    this.statements = Collections.unmodifiableList(statements);
+    this.template = new Environment(names);
+    NativeFunctions.define(template);
+  }
+
+  /**
+   * Scans, parses and resolves a script. Syntax and resolution errors are
+   * thrown together as a {@link CompileError} listing each of them.
+   */
+  public static CompiledScript compile(String source) {
+    // each script binds its global names in a table of its own
+    Globals names = new Globals();
+    List<CompileError.Problem> problems = new ArrayList<>();
+    List<Stmt> statements = Ark.collectErrors(problems, () -> {
+      List<Stmt> parsed = new Parser(new Scanner(source).scanTokens()).parse();
+      if (problems.isEmpty()) {
+        new Resolver(names).resolve(parsed);
+      }
+      return parsed;
+    });
+    if (!problems.isEmpty()) {
+      throw new CompileError("Script has errors.", problems);
+    }
+    return new CompiledScript(names, statements);
+  }
+
+  /**
+   * Fresh globals for this script, holding the native functions, for runs
+   * that share or reuse their globals. They are copied from a set made
+   * once per script.
+   */
+  public Environment globals() {
+    return template.copy();
+  }
+
+  /**
+   * Runs the script against fresh globals.
+   */
+  public Object run(Map<String, ?> inputs) {
+    return run(globals(), inputs);
+  }
+
+  /**
+   * Runs the script against the given globals, which must come from its
+   * {@link #globals()}, binding the inputs in them first. Runtime errors
+   * are thrown as {@link RuntimeError}.
+   */
+  public Object run(Environment globals, Map<String, ?> inputs) {
+    if (globals.names != names) {
+      throw new IllegalArgumentException("Globals were made for another script.");
+    }
+    for (Map.Entry<String, ?> input : inputs.entrySet()) {
+      globals.define(input.getKey(), value(input.getValue()));
+    }
+    return new Interpreter(globals).run(statements);
+  }
+
+  private static Object value(Object value) {
+    if (value instanceof String) {
+      return new ArkString((String) value);
+    }
+    if (value instanceof List) {
+      List<Object> items = new ArrayList<>();
+      for (Object item : (List<?>) value) {
+        items.add(value(item));
+      }
+      return new ArkArray(items);
+    }
+    if (value instanceof Map) {
+      ArkDict dict = new ArkDict(((Map<?, ?>) value).size());
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        dict.set(null, value(entry.getKey()), value(entry.getValue()));
+      }
+      return dict;
+    }
+    return value;
+  }
+}
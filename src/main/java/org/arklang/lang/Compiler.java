@@ -0,0 +1,738 @@
+package org.arklang.lang;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lowers statements into bytecode for the {@link VM}.
+ *
+ * Scopes mirror those of the {@link Resolver} one-to-one: every lambda call
+ * and every block gets its own frame, so closures observe exactly the same
+ * bindings as under the tree-walking {@link Interpreter}. Blocks that
+ * declare nothing are the one exception and are compiled inline. Unlike the
+ * interpreter, locals are addressed by (depth, slot) rather than by name.
+ */
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+  private static class Scope {
+    final Scope enclosing;
+    final Map<String, Integer> slots = new HashMap<>();
+    // Slot 0 of every frame links to the enclosing frame.
+    int size = 1;
+
+    Scope(Scope enclosing) {
+      this.enclosing = enclosing;
+    }
+  }
+
+  private static class Loop {
+    final Loop enclosing;
+    final int frames;
+    final List<Integer> breaks = new ArrayList<>();
+
+    Loop(Loop enclosing, int frames) {
+      this.enclosing = enclosing;
+      this.frames = frames;
+    }
+  }
+
+  private static class Function {
+    final Function enclosing;
+    final Chunk chunk = new Chunk();
+    int stack = 0;
+    int maxStack = 0;
+    int frames = 0;
+    int lastOp = -1;
+    int lastTarget = -1;
+    Loop loop;
+
+    Function(Function enclosing) {
+      this.enclosing = enclosing;
+    }
+  }
+
+  private final VM vm;
+  private Function function;
+  private Scope scope;
+
+  Compiler(VM vm) {
+    this.vm = vm;
+  }
+
+  VMFunction compileScript(List<Stmt> statements, boolean promptMode) {
+    function = new Function(null);
+    scope = null;
+
+    for (Stmt stmt : statements) {
+      if (promptMode && stmt instanceof Stmt.Expression) {
+        Expr expr = ((Stmt.Expression) stmt).expression;
+        compile(expr);
+        emit(expr instanceof Expr.Lambda ? OpCode.POP : OpCode.ECHO, -1, null);
+      } else {
+        compile(stmt);
+      }
+    }
+    emitConstant(VM.COMPLETED);
+    emit(OpCode.RETURN, -1, null);
+
+    return new VMFunction(null, 0, 1, function.chunk.finish(function.maxStack));
+  }
+
+  VMFunction compileExpression(Expr expr) {
+    function = new Function(null);
+    scope = null;
+
+    compile(expr);
+    emit(OpCode.RETURN, -1, null);
+
+    return new VMFunction(null, 0, 1, function.chunk.finish(function.maxStack));
+  }
+
+  private void compile(Stmt stmt) {
+    stmt.accept(this);
+  }
+
+  private void compile(List<Stmt> statements) {
+    for (Stmt stmt : statements) {
+      compile(stmt);
+    }
+  }
+
+  private void compile(Expr expr) {
+    expr.accept(this);
+  }
+
+  /*
+  Emitters
+   */
+  private int emit(int op, int stackEffect, Token token, int... operands) {
+    Chunk chunk = function.chunk;
+    int offset = chunk.write(op, token);
+    function.lastOp = offset;
+    for (int operand : operands) {
+      chunk.write(operand, token);
+    }
+
+    function.stack += stackEffect;
+    if (function.stack > function.maxStack) {
+      function.maxStack = function.stack;
+    }
+    return offset;
+  }
+
+  private int emitJump(int op, int stackEffect) {
+    return emit(op, stackEffect, null, -1) + 1;
+  }
+
+  /**
+   * Emit a jump taken when the condition on top of the stack is falsy. A
+   * comparison immediately preceding it is fused into a single instruction,
+   * unless some jump already lands between the two.
+   */
+  private int emitJumpIfFalse() {
+    Chunk chunk = function.chunk;
+    int last = function.lastOp;
+    if (last == chunk.count - 1 && function.lastTarget != chunk.count) {
+      int fused = -1;
+      switch (chunk.code[last]) {
+        case OpCode.EQUAL: fused = OpCode.JUMP_UNLESS_EQUAL; break;
+        case OpCode.NOT_EQUAL: fused = OpCode.JUMP_UNLESS_NOT_EQUAL; break;
+        case OpCode.LESS: fused = OpCode.JUMP_UNLESS_LESS; break;
+        case OpCode.LESS_EQUAL: fused = OpCode.JUMP_UNLESS_LESS_EQUAL; break;
+        case OpCode.GREATER: fused = OpCode.JUMP_UNLESS_GREATER; break;
+        case OpCode.GREATER_EQUAL: fused = OpCode.JUMP_UNLESS_GREATER_EQUAL; break;
+      }
+      if (fused != -1) {
+        chunk.code[last] = fused;
+        function.stack--;
+        return chunk.write(-1, chunk.tokens[last]);
+      }
+    }
+    return emitJump(OpCode.JUMP_IF_FALSE, -1);
+  }
+
+  private void patchJump(int operand) {
+    function.chunk.code[operand] = here();
+  }
+
+  private int here() {
+    function.lastTarget = function.chunk.count;
+    return function.chunk.count;
+  }
+
+  private void emitConstant(Object value) {
+    emit(OpCode.CONSTANT, 1, null, function.chunk.addConstant(value));
+  }
+
+  /*
+  Scopes
+   */
+  private void declare(Token name) {
+    if (scope == null) return;
+    if (!scope.slots.containsKey(name.lexeme)) {
+      scope.slots.put(name.lexeme, scope.size++);
+    }
+  }
+
+  private void emitDefine(Token name) {
+    if (scope == null) {
+      emit(OpCode.DEFINE_GLOBAL, -1, name, vm.globalIndex(name.lexeme));
+    } else {
+      emit(OpCode.DEFINE_LOCAL, -1, name, scope.slots.get(name.lexeme));
+    }
+  }
+
+  private void emitGet(Token name) {
+    int depth = 0;
+    for (Scope s = scope; s != null; s = s.enclosing, ++depth) {
+      Integer slot = s.slots.get(name.lexeme);
+      if (slot != null) {
+        if (depth == 0) {
+          emit(OpCode.GET_LOCAL0, 1, name, slot);
+        } else {
+          emit(OpCode.GET_LOCAL, 1, name, depth, slot);
+        }
+        return;
+      }
+    }
+    emit(OpCode.GET_GLOBAL, 1, name, vm.globalIndex(name.lexeme));
+  }
+
+  private void emitSet(Token name) {
+    int depth = 0;
+    for (Scope s = scope; s != null; s = s.enclosing, ++depth) {
+      Integer slot = s.slots.get(name.lexeme);
+      if (slot != null) {
+        emit(OpCode.SET_LOCAL, 0, name, depth, slot);
+        return;
+      }
+    }
+    emit(OpCode.SET_GLOBAL, 0, name, vm.globalIndex(name.lexeme));
+  }
+
+  /*
+  Statements
+   */
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    // A block that declares nothing cannot be observed, so it needs no frame.
+    if (!Declarations.in(stmt.statements)) {
+      compile(stmt.statements);
+      return null;
+    }
+
+    scope = new Scope(scope);
+    int size = emit(OpCode.PUSH_FRAME, 0, null, -1) + 1;
+    function.frames++;
+
+    compile(stmt.statements);
+
+    emit(OpCode.POP_FRAME, 0, null);
+    function.frames--;
+    function.chunk.code[size] = scope.size;
+    scope = scope.enclosing;
+    return null;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    compile(stmt.expression);
+    emit(OpCode.POP, -1, null);
+    return null;
+  }
+
+  @Override
+  public Void visitIfStmt(Stmt.If stmt) {
+    compile(stmt.condition);
+    int elseJump = emitJumpIfFalse();
+    compile(stmt.thenBranch);
+
+    if (stmt.elseBranch != null) {
+      int endJump = emitJump(OpCode.JUMP, 0);
+      patchJump(elseJump);
+      compile(stmt.elseBranch);
+      patchJump(endJump);
+    } else {
+      patchJump(elseJump);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    int start = here();
+    compile(stmt.condition);
+    int exitJump = emitJumpIfFalse();
+
+    function.loop = new Loop(function.loop, function.frames);
+    compile(stmt.body);
+    emit(OpCode.JUMP, 0, null, start);
+
+    patchJump(exitJump);
+    endLoop();
+    return null;
+  }
+
+  @Override
+  public Void visitForInStmt(Stmt.ForIn stmt) {
+    boolean indexed = stmt.indexIterator != null;
+    declare(stmt.itemIterator);
+    if (indexed) declare(stmt.indexIterator);
+
+    compile(stmt.enumerable);
+    emit(OpCode.ITERATOR, 0, stmt.token);
+
+    int start = here();
+    int exitJump = emit(OpCode.FOR_ITER, indexed ? 2 : 1, stmt.token,
+        indexed ? 1 : 0, -1) + 2;
+    if (indexed) emitDefine(stmt.indexIterator);
+    emitDefine(stmt.itemIterator);
+
+    function.loop = new Loop(function.loop, function.frames);
+    compile(stmt.body);
+    emit(OpCode.JUMP, 0, null, start);
+
+    patchJump(exitJump);
+    endLoop();
+    emit(OpCode.POP, -1, null);
+    return null;
+  }
+
+  private void endLoop() {
+    for (int operand : function.loop.breaks) {
+      patchJump(operand);
+    }
+    function.loop = function.loop.enclosing;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    compile(stmt.expression);
+    emit(OpCode.PRINT, -1, null);
+    return null;
+  }
+
+  @Override
+  public Void visitSendStmt(Stmt.Send stmt) {
+    if (stmt.tail) {
+      // the callee takes over this frame and sends its value in our place
+      Expr.Operation call = (Expr.Operation) stmt.value;
+      compile(call.target);
+      for (Expr arg : call.arguments) {
+        compile(arg);
+      }
+      int argc = call.arguments.size();
+      // a callee that is not a VM lambda is called in place, and its result
+      // sent by the RETURN that follows
+      emit(OpCode.TAIL_CALL, -argc, call.token, argc);
+      emit(OpCode.RETURN, -1, stmt.keyword);
+      return null;
+    }
+    compile(stmt.value);
+    emit(OpCode.RETURN, -1, stmt.keyword);
+    return null;
+  }
+
+  @Override
+  public Void visitLetStmt(Stmt.Let stmt) {
+    for (int i = 0; i < stmt.names.size(); ++i) {
+      Token name = stmt.names.get(i);
+      declare(name);
+      if (stmt.initializers.get(i) != null) {
+        compile(stmt.initializers.get(i));
+      } else {
+        emit(OpCode.NIL, 1, name);
+      }
+      emitDefine(name);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitBreakStmt(Stmt.Break stmt) {
+    Loop loop = function.loop;
+    if (loop == null) {
+      Ark.error(stmt.keyword, "Cannot use 'break' outside of loop.");
+      return null;
+    }
+
+    for (int i = loop.frames; i < function.frames; ++i) {
+      emit(OpCode.POP_FRAME, 0, stmt.keyword);
+    }
+    loop.breaks.add(emitJump(OpCode.JUMP, 0));
+    return null;
+  }
+
+  /*
+  Expressions
+   */
+  @Override
+  public Void visitAssignExpr(Expr.Assign expr) {
+    compile(expr.value);
+    emitSet(expr.name);
+    return null;
+  }
+
+  @Override
+  public Void visitOperationExpr(Expr.Operation expr) {
+    compile(expr.target);
+    for (Expr arg : expr.arguments) {
+      compile(arg);
+    }
+    int argc = expr.arguments.size();
+    emit(OpCode.CALL, -argc, expr.token, argc);
+    return null;
+  }
+
+  @Override
+  public Void visitBinaryExpr(Expr.Binary expr) {
+    compile(expr.left);
+    compile(expr.right);
+
+    int op;
+    switch (expr.operator.type) {
+      case PLUS: op = OpCode.ADD; break;
+      case MINUS: op = OpCode.SUBTRACT; break;
+      case STAR: op = OpCode.MULTIPLY; break;
+      case SLASH: op = OpCode.DIVIDE; break;
+      case PERCENT: op = OpCode.MODULO; break;
+      case STAR_STAR: op = OpCode.POWER; break;
+      case GREATER: op = OpCode.GREATER; break;
+      case GREATER_EQUAL: op = OpCode.GREATER_EQUAL; break;
+      case LESS: op = OpCode.LESS; break;
+      case LESS_EQUAL: op = OpCode.LESS_EQUAL; break;
+      case EQUAL_EQUAL: op = OpCode.EQUAL; break;
+      case BANG_EQUAL: op = OpCode.NOT_EQUAL; break;
+      case AMPERSAND: op = OpCode.BIT_AND; break;
+      case CARET: op = OpCode.BIT_XOR; break;
+      case PIPE: op = OpCode.BIT_OR; break;
+      case LEFT_SHIFT: op = OpCode.LEFT_SHIFT; break;
+      case RIGHT_SHIFT: op = OpCode.RIGHT_SHIFT; break;
+      case U_RIGHT_SHIFT: op = OpCode.U_RIGHT_SHIFT; break;
+      case AND: op = OpCode.AND; break;
+      case OR: op = OpCode.OR; break;
+      default:
+        // Unknown operators evaluate to nil, as in the interpreter.
+        emit(OpCode.POP, -1, null);
+        emit(OpCode.POP, -1, null);
+        emit(OpCode.NIL, 1, null);
+        return null;
+    }
+
+    emit(op, -1, expr.operator);
+    return null;
+  }
+
+  @Override
+  public Void visitUnaryExpr(Expr.Unary expr) {
+    compile(expr.right);
+    switch (expr.operator.type) {
+      case BANG: emit(OpCode.NOT, 0, expr.operator); break;
+      case MINUS: emit(OpCode.NEGATE, 0, expr.operator); break;
+      case TILDE: emit(OpCode.BIT_NOT, 0, expr.operator); break;
+      default:
+        emit(OpCode.POP, -1, null);
+        emit(OpCode.NIL, 1, null);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitLiteralExpr(Expr.Literal expr) {
+    if (expr.value == null) {
+      emit(OpCode.NIL, 1, null);
+    } else if (expr.value instanceof Boolean) {
+      emit((Boolean) expr.value ? OpCode.TRUE : OpCode.FALSE, 1, null);
+    } else {
+      emitConstant(expr.value);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitVariableExpr(Expr.Variable expr) {
+    emitGet(expr.name);
+    return null;
+  }
+
+  @Override
+  public Void visitTernaryExpr(Expr.Ternary expr) {
+    compile(expr.condition);
+    int elseJump = emitJumpIfFalse();
+    compile(expr.expr1);
+    int endJump = emitJump(OpCode.JUMP, 0);
+
+    // Only one of the branches leaves its value on the stack.
+    function.stack--;
+    patchJump(elseJump);
+    compile(expr.expr2);
+    patchJump(endJump);
+    return null;
+  }
+
+  @Override
+  public Void visitLambdaExpr(Expr.Lambda expr) {
+    // The name is bound in the enclosing scope before the body is compiled
+    // so that lambdas can refer to themselves.
+    if (expr.name != null) declare(expr.name);
+
+    Function enclosing = function;
+    function = new Function(enclosing);
+    scope = new Scope(scope);
+
+    int arity = 0;
+    if (expr.parameters != null) {
+      for (Token param : expr.parameters) {
+        declare(param);
+      }
+      arity = expr.parameters.size();
+    }
+
+    compile(expr.body);
+    emit(OpCode.NIL, 1, null);
+    emit(OpCode.RETURN, -1, null);
+
+    VMFunction compiled = new VMFunction(
+        expr.name != null ? expr.name.lexeme : null, arity, scope.size,
+        function.chunk.finish(function.maxStack));
+
+    scope = scope.enclosing;
+    function = enclosing;
+
+    emit(OpCode.CLOSURE, 1, expr.name, function.chunk.addConstant(compiled));
+    if (expr.name != null) {
+      emit(OpCode.DUP, 1, null);
+      emitDefine(expr.name);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitArrayExpr(Expr.Array expr) {
+    for (Expr item : expr.items) {
+      compile(item);
+    }
+    int count = expr.items.size();
+    emit(OpCode.ARRAY, 1 - count, expr.bracket, count);
+    return null;
+  }
+
+  @Override
+  public Void visitDictExpr(Expr.Dict expr) {
+    for (int i = 0; i < expr.keys.size(); ++i) {
+      compile(expr.keys.get(i));
+      compile(expr.values.get(i));
+    }
+    int count = expr.keys.size();
+    emit(OpCode.DICT, 1 - 2 * count, expr.token, count);
+    return null;
+  }
+
+  @Override
+  public Void visitPipeExpr(Expr.Pipe expr) {
+    List<Expr.Pipe> pipes = Pipeline.chain(expr);
+    compile(pipes.get(0).source);
+    for (Expr.Pipe pipe : pipes) {
+      compile(pipe.stage);
+      for (Expr argument : pipe.arguments) {
+        compile(argument);
+      }
+      int argc = pipe.arguments.size();
+      emit(OpCode.STAGE, -argc, pipe.token, argc, pipe.filter ? 1 : 0);
+    }
+    emit(OpCode.PIPE, -pipes.size(), expr.token, pipes.size());
+    return null;
+  }
+
+  @Override
+  public Void visitStrExpr(Expr.Str expr) {
+    emit(OpCode.STRING, 1, expr.token, function.chunk.addConstant(ArkString.prototype(expr)));
+    return null;
+  }
+
+  @Override
+  public Void visitCharExpr(Expr.Char expr) {
+    emitConstant(expr.c);
+    return null;
+  }
+
+  @Override
+  public Void visitIndexGetExpr(Expr.IndexGet expr) {
+    compile(expr.indexee);
+    compile(expr.index);
+    emit(OpCode.INDEX_GET, -1, expr.token);
+    return null;
+  }
+
+  @Override
+  public Void visitIndexSetExpr(Expr.IndexSet expr) {
+    compile(expr.indexee);
+    compile(expr.index);
+    compile(expr.value);
+    emit(OpCode.INDEX_SET, -2, expr.token);
+    return null;
+  }
+
+  @Override
+  public Void visitRangeExpr(Expr.Range expr) {
+    compile(expr.lower);
+    compile(expr.upper);
+    emit(OpCode.RANGE, -1, expr.token, expr.closed ? 1 : 0);
+    return null;
+  }
+
+  /**
+   * Finds whether statements declare a name in their own scope, without
+   * looking into nested blocks or lambda bodies.
+   */
+  private static class Declarations
+      implements Expr.Visitor<Boolean>, Stmt.Visitor<Boolean> {
+
+    private static final Declarations instance = new Declarations();
+
+    static boolean in(List<Stmt> statements) {
+      for (Stmt stmt : statements) {
+        if (stmt.accept(instance)) return true;
+      }
+      return false;
+    }
+
+    private boolean in(Expr... exprs) {
+      for (Expr expr : exprs) {
+        if (expr != null && expr.accept(this)) return true;
+      }
+      return false;
+    }
+
+    private boolean in(Stmt stmt) {
+      return stmt != null && !(stmt instanceof Stmt.Block) && stmt.accept(this);
+    }
+
+    @Override
+    public Boolean visitBlockStmt(Stmt.Block stmt) {
+      return false;
+    }
+
+    @Override
+    public Boolean visitExpressionStmt(Stmt.Expression stmt) {
+      return in(stmt.expression);
+    }
+
+    @Override
+    public Boolean visitIfStmt(Stmt.If stmt) {
+      return in(stmt.condition) || in(stmt.thenBranch) || in(stmt.elseBranch);
+    }
+
+    @Override
+    public Boolean visitWhileStmt(Stmt.While stmt) {
+      return in(stmt.condition) || in(stmt.body);
+    }
+
+    @Override
+    public Boolean visitForInStmt(Stmt.ForIn stmt) {
+      return true;
+    }
+
+    @Override
+    public Boolean visitPrintStmt(Stmt.Print stmt) {
+      return in(stmt.expression);
+    }
+
+    @Override
+    public Boolean visitSendStmt(Stmt.Send stmt) {
+      return in(stmt.value);
+    }
+
+    @Override
+    public Boolean visitLetStmt(Stmt.Let stmt) {
+      return true;
+    }
+
+    @Override
+    public Boolean visitBreakStmt(Stmt.Break stmt) {
+      return false;
+    }
+
+    @Override
+    public Boolean visitAssignExpr(Expr.Assign expr) {
+      return in(expr.value);
+    }
+
+    @Override
+    public Boolean visitOperationExpr(Expr.Operation expr) {
+      return in(expr.target) || in(expr.arguments.toArray(new Expr[0]));
+    }
+
+    @Override
+    public Boolean visitBinaryExpr(Expr.Binary expr) {
+      return in(expr.left, expr.right);
+    }
+
+    @Override
+    public Boolean visitUnaryExpr(Expr.Unary expr) {
+      return in(expr.right);
+    }
+
+    @Override
+    public Boolean visitLiteralExpr(Expr.Literal expr) {
+      return false;
+    }
+
+    @Override
+    public Boolean visitVariableExpr(Expr.Variable expr) {
+      return false;
+    }
+
+    @Override
+    public Boolean visitTernaryExpr(Expr.Ternary expr) {
+      return in(expr.condition, expr.expr1, expr.expr2);
+    }
+
+    @Override
+    public Boolean visitLambdaExpr(Expr.Lambda expr) {
+      return expr.name != null;
+    }
+
+    @Override
+    public Boolean visitArrayExpr(Expr.Array expr) {
+      return in(expr.items.toArray(new Expr[0]));
+    }
+
+    @Override
+    public Boolean visitDictExpr(Expr.Dict expr) {
+      return in(expr.keys.toArray(new Expr[0])) || in(expr.values.toArray(new Expr[0]));
+    }
+
+    @Override
+    public Boolean visitPipeExpr(Expr.Pipe expr) {
+      return in(expr.source, expr.stage) || in(expr.arguments.toArray(new Expr[0]));
+    }
+
+    @Override
+    public Boolean visitStrExpr(Expr.Str expr) {
+      return false;
+    }
+
+    @Override
+    public Boolean visitCharExpr(Expr.Char expr) {
+      return false;
+    }
+
+    @Override
+    public Boolean visitIndexGetExpr(Expr.IndexGet expr) {
+      return in(expr.indexee, expr.index);
+    }
+
+    @Override
+    public Boolean visitIndexSetExpr(Expr.IndexSet expr) {
+      return in(expr.indexee, expr.index, expr.value);
+    }
+
+    @Override
+    public Boolean visitRangeExpr(Expr.Range expr) {
+      return in(expr.lower, expr.upper);
+    }
+  }
+}
@@ -0,0 +1,9 @@
+package org.arklang.lang;
+
+/**
+ * How the execution of a statement completed. A send leaves its value with
+ * the engine that executed it, for the enclosing lambda to pick up.
+ */
+enum Completion {
+  NORMAL, SEND, BREAK
+}
@@ -1,61 +1,128 @@
 package org.arklang.lang;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Contain variable/function values/objects.
+ *
+ * Local environments are frames: arrays of slots sized and indexed by the
+ * {@link Resolver}, each used by one thread. A global environment holds one
+ * cell per name in its {@link Globals} table and may be shared by
+ * interpreters on several threads. Its cells live in fixed-size pages that
+ * are never moved, so growing it for new names cannot lose a write made
+ * concurrently. A page is only allocated once a cell in it is defined.
  */
 public class Environment {
 
+  private static final int PAGE_BITS = 8;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+
   final Environment enclosing;
-  private final Map<String, Object> values = new HashMap<>();
+  final Object[] slots;
+  final Globals names;
+  private volatile Object[][] pages;
 
   public Environment() {
+    this(Globals.DEFAULT);
+  }
+
+  Environment(Globals names) {
     enclosing = null;
+    slots = null;
+    this.names = names;
+    pages = new Object[0][];
   }
 
-  public Environment(Environment enclosing) {
+  public Environment(Environment enclosing, int size) {
     this.enclosing = enclosing;
+    this.slots = new Object[size];
+    this.names = null;
+  }
+
+  /**
+   * A global environment over the same table, holding the same values as
+   * this one does now.
+   */
+  Environment copy() {
+    Environment copy = new Environment(names);
+    Object[][] pages = this.pages;
+    Object[][] copied = new Object[pages.length][];
+    for (int i = 0; i < pages.length; ++i) {
+      if (pages[i] != null) copied[i] = pages[i].clone();
+    }
+    copy.pages = copied;
+    return copy;
   }
 
   void define(String name, Object value) {
-    values.put(name, value);
+    define(names.index(name), value);
   }
 
-  Object get(Token name) {
-    if (values.containsKey(name.lexeme)) {
-      return values.get(name.lexeme);
+  void define(int slot, Object value) {
+    if (slots != null) {
+      slots[slot] = value;
+    } else {
+      Object[][] pages = this.pages;
+      int page = slot >>> PAGE_BITS;
+      if (page >= pages.length || pages[page] == null) {
+        reserve(page);
+        pages = this.pages;
+      }
+      pages[page][slot & PAGE_MASK] = value;
     }
+  }
 
-    if (enclosing != null) return enclosing.get(name);
+  /*
+  Allocates a page of global cells.
+   */
+  private synchronized void reserve(int page) {
+    Object[][] current = pages;
+    if (page < current.length && current[page] != null) return;
+
+    Object[][] grown = Arrays.copyOf(current, Math.max(current.length, page + 1));
+    grown[page] = new Object[PAGE_SIZE];
+    Arrays.fill(grown[page], Globals.UNDEFINED);
+    pages = grown;
+  }
 
-    throw new RuntimeError(name,
-        "Undefined variable '" + name.lexeme + "'.");
+  Object get(Token name) {
+    return getGlobal(names.index(name.lexeme), name);
+  }
+
+  Object getGlobal(int cell, Token name) {
+    Object[][] pages = this.pages;
+    int page = cell >>> PAGE_BITS;
+    Object value = page < pages.length && pages[page] != null
+        ? pages[page][cell & PAGE_MASK] : Globals.UNDEFINED;
+    if (value == Globals.UNDEFINED) {
+      throw new RuntimeError(name,
+          "Undefined variable '" + name.lexeme + "'.");
+    }
+    return value;
   }
 
-  Object getAt(int distance, String name) {
-    Environment anc = ancestor(distance);
-    return anc.values.get(name);
+  Object getAt(int distance, int slot) {
+    return ancestor(distance).slots[slot];
   }
 
   void assign(Token name, Object value) {
-    if (values.containsKey(name.lexeme)) {
-      values.put(name.lexeme, value);
-      return;
-    }
+    assignGlobal(names.index(name.lexeme), name, value);
+  }
 
-    if (enclosing != null) {
-      enclosing.assign(name, value);
-      return;
+  void assignGlobal(int cell, Token name, Object value) {
+    Object[][] pages = this.pages;
+    int page = cell >>> PAGE_BITS;
+    if (page >= pages.length || pages[page] == null
+        || pages[page][cell & PAGE_MASK] == Globals.UNDEFINED) {
+      throw new RuntimeError(name,
+          "Undefined variable '" + name.lexeme + "'");
     }
-
-    throw new RuntimeError(name,
-        "Undefined variable '" + name.lexeme + "'");
+    pages[page][cell & PAGE_MASK] = value;
   }
 
-  void assignAt(int distance, Token name, Object value) {
-    ancestor(distance).values.put(name.lexeme, value);
+  void assignAt(int distance, int slot, Object value) {
+    ancestor(distance).slots[slot] = value;
   }
 
   Environment ancestor(int distance) {
@@ -65,5 +132,4 @@ public class Environment {
     }
     return environment;
   }
-
 }
@@ -13,11 +13,13 @@ abstract class Expr {
     R visitTernaryExpr(Ternary expr);
     R visitLambdaExpr(Lambda expr);
     R visitArrayExpr(Array expr);
+    R visitDictExpr(Dict expr);
     R visitStrExpr(Str expr);
     R visitCharExpr(Char expr);
     R visitIndexGetExpr(IndexGet expr);
     R visitIndexSetExpr(IndexSet expr);
     R visitRangeExpr(Range expr);
+    R visitPipeExpr(Pipe expr);
   }
   static class Assign extends Expr {
     Assign(Token name, Expr value) {
@@ -31,6 +33,8 @@ abstract class Expr {
 
     final Token name;
     final Expr value;
+    int depth = -1;
+    int slot;
   }
   static class Operation extends Expr {
     Operation(Token token, Expr target, List<Expr> arguments) {
@@ -61,6 +65,7 @@ abstract class Expr {
     final Token operator;
     final Expr left;
     final Expr right;
+    BinaryNode node = BinaryNode.UNINITIALIZED;
   }
   static class Unary extends Expr {
     Unary(Token operator, Expr right) {
@@ -96,6 +101,8 @@ abstract class Expr {
     }
 
     final Token name;
+    int depth = -1;
+    int slot;
   }
   static class Ternary extends Expr {
     Ternary(Expr condition, Expr expr1, Expr expr2) {
@@ -126,6 +133,10 @@ abstract class Expr {
     final Token name;
     final List<Token> parameters;
     final List<Stmt> body;
+    int slot = -1;
+    int frameSize;
+    int calls;
+    volatile CompiledLambda compiled;
   }
   static class Array extends Expr {
     Array(Token bracket, List<Expr> items) {
@@ -140,6 +151,21 @@ abstract class Expr {
     final Token bracket;
     final List<Expr> items;
   }
+  static class Dict extends Expr {
+    Dict(Token token, List<Expr> keys, List<Expr> values) {
+      this.token = token;
+      this.keys = keys;
+      this.values = values;
+    }
+
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitDictExpr(this);
+    }
+
+    final Token token;
+    final List<Expr> keys;
+    final List<Expr> values;
+  }
   static class Str extends Expr {
     Str(Token token, String str) {
       this.token = token;
@@ -152,6 +178,7 @@ abstract class Expr {
 
     final Token token;
     final String str;
+    volatile ArkString value;
   }
   static class Char extends Expr {
     Char(Token token, Character c) {
@@ -215,6 +242,25 @@ abstract class Expr {
     final Token token;
     final boolean closed;
   }
+  static class Pipe extends Expr {
+    Pipe(Expr source, Token token, Expr stage, List<Expr> arguments, boolean filter) {
+      this.source = source;
+      this.token = token;
+      this.stage = stage;
+      this.arguments = arguments;
+      this.filter = filter;
+    }
+
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitPipeExpr(this);
+    }
+
+    final Expr source;
+    final Token token;
+    final Expr stage;
+    final List<Expr> arguments;
+    final boolean filter;
+  }
 
   abstract <R> R accept(Visitor<R> visitor);
 }
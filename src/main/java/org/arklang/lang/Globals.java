@@ -0,0 +1,44 @@
+package org.arklang.lang;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table of global names. Every global name is bound to a fixed cell index
+ * once, by the {@link Resolver}. Each global {@link Environment} made from
+ * the table then stores its values in pages indexed by these cells, so the
+ * same resolved AST can run against different sets of globals.
+ *
+ * A table belongs to one unit of code and the environments it runs in: the
+ * command line runner shares {@link #DEFAULT}, while each
+ * {@link CompiledScript} has a table of its own, so the names of one script
+ * cost nothing in another's globals.
+ */
+final class Globals {
+
+  /**
+   * Value of a cell that has not been defined in an environment.
+   */
+  static final Object UNDEFINED = new Object() {
+    @Override
+    public String toString() {
+      return "undefined";
+    }
+  };
+
+  /**
+   * The table of environments and resolvers made without one.
+   */
+  static final Globals DEFAULT = new Globals();
+
+  private final Map<String, Integer> indices = new ConcurrentHashMap<>();
+
+  int index(String name) {
+    Integer index = indices.get(name);
+    if (index != null) return index;
+
+    synchronized (indices) {
+      return indices.computeIfAbsent(name, n -> indices.size());
+    }
+  }
+}
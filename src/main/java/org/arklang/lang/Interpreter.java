@@ -1,345 +1,130 @@
 package org.arklang.lang;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-
-  private final Environment globals = new Environment();
-  private Environment environment = globals;
-  private final Map<Expr, Integer> locals = new HashMap<>();
-  private boolean promptMode = false;
+/**
+ * Tree-walking interpreter.
+ *
+ * An interpreter is the execution context of a single thread: the
+ * environment of the innermost running block and the value of the last
+ * send. Its globals, and the resolved syntax trees it runs, are shared with
+ * every interpreter forked from it. Each script runs on a fresh fork, so
+ * one interpreter may run scripts on several threads at once.
+ */
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion> {
+
+  private final Environment globals;
+  private Environment environment;
+  private Object sent = null;
 
   Interpreter() {
+    this(new Environment());
     NativeFunctions.define(globals);
   }
 
-  void interpret(List<Stmt> statements, boolean prompt) {
-    promptMode = prompt;
+  Interpreter(Environment globals) {
+    this.globals = globals;
+    this.environment = globals;
+  }
+
+  /**
+   * An interpreter over the same globals with execution state of its own.
+   */
+  Interpreter fork() {
+    return new Interpreter(globals);
+  }
+
+  /**
+   * Runs statements on a fork of this interpreter, reporting any runtime
+   * error. Returns false if a send or an error ended the script early.
+   */
+  boolean interpret(List<Stmt> statements, boolean prompt) {
     try {
-      for (Stmt stmt : statements) {
-        if (promptMode && stmt instanceof Stmt.Expression) {
-          Expr expr = ((Stmt.Expression) stmt).expression;
-          Object value = evaluate(expr);
-          if (value != null && !(expr instanceof Expr.Lambda)) {
-            System.out.println(value);
-          }
-        } else {
-          execute(stmt);
-        }
-      }
+      return fork().run(statements, prompt) == Completion.NORMAL;
     } catch (RuntimeError error) {
       Ark.runtimeError(error);
+      return false;
     }
   }
 
-  public void resolve(Expr expr, int distance) {
-    locals.put(expr, distance);
+  /**
+   * Runs a script on a fork of this interpreter, returning the value it
+   * sent, if any. Runtime errors are thrown to the caller.
+   */
+  Object run(List<Stmt> statements) {
+    Interpreter script = fork();
+    script.run(statements, false);
+    return script.takeSent();
   }
 
-  public void execute(Stmt stmt) {
-    stmt.accept(this);
+  private Completion run(List<Stmt> statements, boolean prompt) {
+    for (Stmt stmt : statements) {
+      if (prompt && stmt instanceof Stmt.Expression) {
+        Expr expr = ((Stmt.Expression) stmt).expression;
+        Object value = evaluate(expr);
+        if (value != null && !(expr instanceof Expr.Lambda)) {
+          System.out.println(value);
+        }
+      } else if (execute(stmt) == Completion.SEND) {
+        return Completion.SEND;
+      }
+    }
+    return Completion.NORMAL;
   }
 
-  public void executeBlock(List<Stmt> statements, Environment environment) {
+  public Completion execute(Stmt stmt) {
+    return stmt.accept(this);
+  }
+
+  public Completion executeBlock(List<Stmt> statements, Environment environment) {
     Environment previous = this.environment;
     try {
       this.environment = environment;
       for (Stmt stmt : statements) {
-        execute(stmt);
+        Completion completion = execute(stmt);
+        if (completion != Completion.NORMAL) return completion;
       }
+      return Completion.NORMAL;
     } finally {
       this.environment = previous;
     }
   }
 
+  /**
+   * Takes the value left by the send that completed the last block.
+   */
+  Object takeSent() {
+    Object value = sent;
+    sent = null;
+    return value;
+  }
+
   public Object evaluate(Expr expr) {
     return expr.accept(this);
   }
 
   @Override
   public Object visitOperationExpr(Expr.Operation expr) {
-    Object target = evaluate(expr.target);
-
-    if (!(target instanceof ArkCallable)) {
-      throw new RuntimeError(expr.token, "Invalid operation target.");
-    }
+    ArkCallable lambda = Operators.checkCallable(expr.token, evaluate(expr.target));
 
     List<Object> arguments = new ArrayList<>();
     for (Expr arg : expr.arguments) {
       arguments.add(evaluate(arg));
     }
 
-    ArkCallable lambda = (ArkCallable) target;
-
-    if (!lambda.variadic() && arguments.size() != lambda.arity()) {
-      throw new RuntimeError(expr.token, "Expected " +
-          lambda.arity() +
-          " args but got " +
-          arguments.size() + ".");
-    }
-
-    return lambda.call(this, arguments);
+    Operators.checkArity(expr.token, lambda, arguments.size());
+    return lambda.call(this, expr.token, arguments);
   }
 
   @Override
   public Object visitBinaryExpr(Expr.Binary expr) {
-    Object left = evaluate(expr.left);
-    Object right = evaluate(expr.right);
-
-    switch (expr.operator.type) {
-      /*
-      Number Operations
-       */
-      case PLUS:
-        if (left instanceof ArkString || right instanceof ArkString) {
-          return left.toString() + right.toString();
-        }
-        checkNumberOperands(expr.operator, left, right);
-        if (left instanceof Integer && right instanceof Integer) {
-          return (int)left + (int)right;
-        }
-        if (left instanceof Integer && right instanceof Double) {
-          return (int)left + (double)right;
-        }
-        if (left instanceof Double && right instanceof Integer) {
-          return (double)left + (int)right;
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (double)left + (double)right;
-        }
-        break;
-      case MINUS:
-        checkNumberOperands(expr.operator, left, right);
-        if (left instanceof Integer && right instanceof Integer) {
-          return (int)left - (int)right;
-        }
-        if (left instanceof Integer && right instanceof Double) {
-          return (int)left - (double)right;
-        }
-        if (left instanceof Double && right instanceof Integer) {
-          return (double)left - (int)right;
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (double)left - (double)right;
-        }
-        break;
-      case STAR:
-        checkNumberOperands(expr.operator, left, right);
-        if (left instanceof Integer && right instanceof Integer) {
-          return (int)left * (int)right;
-        }
-        if (left instanceof Integer && right instanceof Double) {
-          return (int)left * (double)right;
-        }
-        if (left instanceof Double && right instanceof Integer) {
-          return (double)left * (int)right;
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (double)left * (double)right;
-        }
-        break;
-      case SLASH:
-        checkNumberOperands(expr.operator, left, right);
-        if (left instanceof Integer && right instanceof Integer) {
-          return (int)left / (int)right;
-        }
-        if (left instanceof Integer && right instanceof Double) {
-          return (int)left / (double)right;
-        }
-        if (left instanceof Double && right instanceof Integer) {
-          return (double)left / (int)right;
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (double)left / (double)right;
-        }
-        break;
-      case PERCENT:
-        checkNumberOperands(expr.operator, left, right);
-        if (left instanceof Integer && right instanceof Integer) {
-          return (int)left % (int)right;
-        }
-        if (left instanceof Integer && right instanceof Double) {
-          return (int)left % (double)right;
-        }
-        if (left instanceof Double && right instanceof Integer) {
-          return (double)left % (int)right;
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (double)left % (double)right;
-        }
-        break;
-      case STAR_STAR:
-        checkNumberOperands(expr.operator, left, right);
-        if (left instanceof Integer && right instanceof Integer) {
-          return (int)Math.pow((int)left, (int)right);
-        }
-        if (left instanceof Integer && right instanceof Double) {
-          return Math.pow((int)left, (double)right);
-        }
-        if (left instanceof Double && right instanceof Integer) {
-          return Math.pow((double)left, (int)right);
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return Math.pow((double)left, (double)right);
-        }
-        break;
-      case GREATER:
-        checkNumberOperands(expr.operator, left, right);
-        if (left instanceof Integer && right instanceof Integer) {
-          return (int)left > (int)right;
-        }
-        if (left instanceof Integer && right instanceof Double) {
-          return (int)left > (double)right;
-        }
-        if (left instanceof Double && right instanceof Integer) {
-          return (double)left > (int)right;
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (double)left > (double)right;
-        }
-        break;
-      case GREATER_EQUAL:
-        checkNumberOperands(expr.operator, left, right);
-        if (left instanceof Integer && right instanceof Integer) {
-          return (int)left >= (int)right;
-        }
-        if (left instanceof Integer && right instanceof Double) {
-          return (int)left >= (double)right;
-        }
-        if (left instanceof Double && right instanceof Integer) {
-          return (double)left >= (int)right;
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (double)left >= (double)right;
-        }
-        break;
-      case LESS:
-        checkNumberOperands(expr.operator, left, right);
-        if (left instanceof Integer && right instanceof Integer) {
-          return (int)left < (int)right;
-        }
-        if (left instanceof Integer && right instanceof Double) {
-          return (int)left < (double)right;
-        }
-        if (left instanceof Double && right instanceof Integer) {
-          return (double)left < (int)right;
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (double)left < (double)right;
-        }
-        break;
-      case LESS_EQUAL:
-        checkNumberOperands(expr.operator, left, right);
-        if (left instanceof Integer && right instanceof Integer) {
-          return (int)left <= (int)right;
-        }
-        if (left instanceof Integer && right instanceof Double) {
-          return (int)left <= (double)right;
-        }
-        if (left instanceof Double && right instanceof Integer) {
-          return (double)left <= (int)right;
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (double)left <= (double)right;
-        }
-        break;
-      case BANG_EQUAL:
-        if (left instanceof ArkString || right instanceof ArkString) {
-          return !left.toString().equals(right.toString());
-        }
-        if (left instanceof Character || right instanceof Character) {
-          return !left.toString().equals(right.toString());
-        }
-        checkNumberOperands(expr.operator, left, right);
-        if (left instanceof Integer && right instanceof Integer) {
-          return (int)left != (int)right;
-        }
-        if (left instanceof Integer && right instanceof Double) {
-          return (int)left != (double)right;
-        }
-        if (left instanceof Double && right instanceof Integer) {
-          return (double)left != (int)right;
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (double)left != (double)right;
-        }
-        break;
-      case EQUAL_EQUAL:
-        if (left instanceof ArkString || right instanceof ArkString) {
-          return left.toString().equals(right.toString());
-        }
-        if (left instanceof Character || right instanceof Character) {
-          return left.toString().equals(right.toString());
-        }
-        checkNumberOperands(expr.operator, left, right);
-        if (left instanceof Integer && right instanceof Integer) {
-          return (int)left == (int)right;
-        }
-        if (left instanceof Integer && right instanceof Double) {
-          return (int)left == (double)right;
-        }
-        if (left instanceof Double && right instanceof Integer) {
-          return (double)left == (int)right;
-        }
-        if (left instanceof Double && right instanceof Double) {
-          return (double)left == (double)right;
-        }
-        break;
-      /*
-      Bitwise Operations
-       */
-      case AMPERSAND:
-        checkIntegerOperands(expr.operator, left, right);
-        return (int)left & (int)right;
-      case CARET:
-        checkIntegerOperands(expr.operator, left, right);
-        return (int)left ^ (int)right;
-      case PIPE:
-        checkIntegerOperands(expr.operator, left, right);
-        return (int)left | (int)right;
-      case LEFT_SHIFT:
-        checkIntegerOperands(expr.operator, left, right);
-        return (int)left << (int)right;
-      case RIGHT_SHIFT:
-        checkIntegerOperands(expr.operator, left, right);
-        return (int)left >> (int)right;
-      case U_RIGHT_SHIFT:
-        checkIntegerOperands(expr.operator, left, right);
-        return (int)left >>> (int)right;
-      /*
-      Logical operations
-       */
-      case AND:
-        return isTruthy(left) && isTruthy(right);
-      case OR:
-        return isTruthy(left) || isTruthy(right);
-
-    }
-
-    return null;
+    return expr.node.evaluate(this, expr);
   }
 
   @Override
   public Object visitUnaryExpr(Expr.Unary expr) {
     Object right = evaluate(expr.right);
-
-    switch (expr.operator.type) {
-      case BANG:
-        return !isTruthy(right);
-      case MINUS:
-        checkNumberOperand(expr.operator, right);
-        if (right instanceof Integer) {
-          return -(Integer)right;
-        } else {
-          return -(Double)right;
-        }
-      case TILDE:
-        checkIntegerOperand(expr.operator, right);
-        return ~(int)right;
-    }
-
-    return null;
+    return Operators.unary(expr.operator, right);
   }
 
   @Override
@@ -349,21 +134,19 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Object visitVariableExpr(Expr.Variable expr) {
-    return lookUpVariable(expr.name, expr);
+    return lookUpVariable(expr);
   }
 
   @Override
   public Object visitAssignExpr(Expr.Assign expr) {
     Object value = evaluate(expr.value);
 
-    Integer distance = locals.get(expr);
-    if (distance != null) {
-      environment.assignAt(distance, expr.name, value);
+    if (expr.depth >= 0) {
+      environment.assignAt(expr.depth, expr.slot, value);
     } else {
-      globals.assign(expr.name, value);
+      globals.assignGlobal(expr.slot, expr.name, value);
     }
 
-    environment.assign(expr.name, value);
     return value;
   }
 
@@ -371,7 +154,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   public Object visitLambdaExpr(Expr.Lambda expr) {
     Lambda lambda = new Lambda(expr, environment);
     if (expr.name != null) {
-      environment.define(expr.name.lexeme, lambda);
+      environment.define(expr.slot, lambda);
     }
     return lambda;
   }
@@ -383,21 +166,33 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   }
 
   @Override
-  public Void visitExpressionStmt(Stmt.Expression stmt) {
+  public Completion visitExpressionStmt(Stmt.Expression stmt) {
     evaluate(stmt.expression);
-    return null;
+    return Completion.NORMAL;
   }
 
   @Override
   public Object visitArrayExpr(Expr.Array expr) {
-    return new ArkArray(expr.items.stream()
-        .map(this::evaluate)
-        .collect(Collectors.toList()));
+    Object[] items = new Object[expr.items.size()];
+    for (int i = 0; i < items.length; ++i) {
+      items[i] = evaluate(expr.items.get(i));
+    }
+    return new ArkArray(items);
+  }
+
+  @Override
+  public Object visitDictExpr(Expr.Dict expr) {
+    Object[] entries = new Object[expr.keys.size() * 2];
+    for (int i = 0; i < expr.keys.size(); ++i) {
+      entries[2 * i] = evaluate(expr.keys.get(i));
+      entries[2 * i + 1] = evaluate(expr.values.get(i));
+    }
+    return Operators.dict(expr.token, entries);
   }
 
   @Override
   public Object visitStrExpr(Expr.Str expr) {
-    return new ArkString(expr.str);
+    return ArkString.literal(expr);
   }
 
   @Override
@@ -408,180 +203,168 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   @Override
   public Object visitIndexGetExpr(Expr.IndexGet expr) {
     Object indexee = evaluate(expr.indexee);
-
-    if (!(indexee instanceof ArkIndexable)) {
-      Ark.error(expr.token, "Can only index collection types.");
-    } else {
-      return ((ArkIndexable) indexee).get(expr.token, evaluate(expr.index));
-    }
-
-    return null;
+    return Operators.indexGet(expr.token, indexee, evaluate(expr.index));
   }
 
   @Override
   public Object visitIndexSetExpr(Expr.IndexSet expr) {
     Object indexee = evaluate(expr.indexee);
-
-    if (!(indexee instanceof ArkIndexable)) {
-      Ark.error(expr.token, "Can only index collection types.");
-    } else {
-      return ((ArkIndexable) indexee).set(expr.token,
-          evaluate(expr.index), evaluate(expr.value));
-    }
-
-    return null;
+    Object index = evaluate(expr.index);
+    return Operators.indexSet(expr.token, indexee, index, evaluate(expr.value));
   }
 
   @Override
   public Object visitRangeExpr(Expr.Range expr) {
-    try {
-      Integer lower = (Integer)evaluate(expr.lower);
-      Integer upper = (Integer)evaluate(expr.upper);
-
-      ArrayList<Object> range = new ArrayList<>();
-      for (int i = lower; i < upper; ++i) {
-        range.add(i);
-      }
+    Object lower = evaluate(expr.lower);
+    Object upper = evaluate(expr.upper);
+    return Operators.range(expr.token, lower, upper, expr.closed);
+  }
 
-      if (expr.closed) {
-        range.add(upper);
+  @Override
+  public Object visitPipeExpr(Expr.Pipe expr) {
+    List<Expr.Pipe> pipes = Pipeline.chain(expr);
+    Object source = evaluate(pipes.get(0).source);
+    Pipeline.Stage[] stages = new Pipeline.Stage[pipes.size()];
+    for (int i = 0; i < stages.length; ++i) {
+      Expr.Pipe pipe = pipes.get(i);
+      Object callable = evaluate(pipe.stage);
+      Object[] arguments = new Object[pipe.arguments.size()];
+      for (int j = 0; j < arguments.length; ++j) {
+        arguments[j] = evaluate(pipe.arguments.get(j));
       }
-
-      return new ArkArray(range);
-    } catch (ClassCastException e) {
-      Ark.error(expr.token,
-          "Lower & Upper bounds of range expression must be integers.");
-      return null;
+      stages[i] = new Pipeline.Stage(pipe.token, callable, arguments, pipe.filter);
     }
+    return Pipeline.run(this, source, stages);
   }
 
   @Override
-  public Void visitLetStmt(Stmt.Let stmt) {
+  public Completion visitLetStmt(Stmt.Let stmt) {
     for (int i = 0; i < stmt.names.size(); ++i) {
       Object value = null;
       if (stmt.initializers.get(i) != null) {
         value = evaluate(stmt.initializers.get(i));
       }
-      environment.define(stmt.names.get(i).lexeme, value);
+      environment.define(stmt.slots[i], value);
     }
 
-    return null;
+    return Completion.NORMAL;
   }
 
   @Override
-  public Void visitIfStmt(Stmt.If stmt) {
+  public Completion visitIfStmt(Stmt.If stmt) {
     Object condition = evaluate(stmt.condition);
     if (isTruthy(condition)) {
-      execute(stmt.thenBranch);
+      return execute(stmt.thenBranch);
     } else if (stmt.elseBranch != null) {
-      execute(stmt.elseBranch);
+      return execute(stmt.elseBranch);
     }
-    return null;
+    return Completion.NORMAL;
   }
 
   @Override
-  public Void visitWhileStmt(Stmt.While stmt) {
+  public Completion visitWhileStmt(Stmt.While stmt) {
     while (isTruthy(evaluate(stmt.condition))) {
-      try {
-        execute(stmt.body);
-      } catch (BreakJump b) {
-        break;
-      }
+      Completion completion = execute(stmt.body);
+      if (completion == Completion.BREAK) break;
+      if (completion == Completion.SEND) return completion;
     }
-    return null;
+    return Completion.NORMAL;
   }
 
   @Override
-  public Void visitForInStmt(Stmt.ForIn stmt) {
+  public Completion visitForInStmt(Stmt.ForIn stmt) {
 
     Object enumerable = evaluate(stmt.enumerable);
     if (!(enumerable instanceof ArkEnumerable)) {
       Ark.error(stmt.token, "for stmt target must be enumerable.");
-      return null;
+      return Completion.NORMAL;
     }
 
     Integer index = 0;
 
     for (Object o : (ArkEnumerable)enumerable) {
-      environment.define(stmt.itemIterator.lexeme, o);
+      environment.define(stmt.itemSlot, o);
       if (stmt.indexIterator != null) {
-        environment.define(stmt.indexIterator.lexeme, index++);
+        environment.define(stmt.indexSlot, index++);
       }
 
-      try {
-        execute(stmt.body);
-      } catch (BreakJump e) {
-        break;
-      }
+      Completion completion = execute(stmt.body);
+      if (completion == Completion.BREAK) break;
+      if (completion == Completion.SEND) return completion;
     }
 
-    return null;
+    return Completion.NORMAL;
   }
 
   @Override
-  public Void visitSendStmt(Stmt.Send stmt) {
-    Object value = evaluate(stmt.value);
-    throw new SendJump(value);
+  public Completion visitSendStmt(Stmt.Send stmt) {
+    Object value = stmt.tail
+        ? tailCall((Expr.Operation) stmt.value)
+        : evaluate(stmt.value);
+    sent = value;
+    return Completion.SEND;
+  }
+
+  /**
+   * Evaluates a call in tail position. Calls to lambdas are not made here
+   * but returned for the caller's trampoline in {@link Lambda#invoke}.
+   */
+  private Object tailCall(Expr.Operation expr) {
+    ArkCallable callable = Operators.checkCallable(expr.token, evaluate(expr.target));
+
+    Object[] arguments = new Object[expr.arguments.size()];
+    for (int i = 0; i < arguments.length; ++i) {
+      arguments[i] = evaluate(expr.arguments.get(i));
+    }
+
+    Operators.checkArity(expr.token, callable, arguments.length);
+    if (callable instanceof Lambda) {
+      return new TailCall(callable, arguments);
+    }
+    return callable.call(this, expr.token, new ArrayList<>(Arrays.asList(arguments)));
   }
 
   @Override
-  public Void visitBreakStmt(Stmt.Break stmt) {
-    throw new BreakJump();
+  public Completion visitBreakStmt(Stmt.Break stmt) {
+    return Completion.BREAK;
   }
 
   @Override
-  public Void visitPrintStmt(Stmt.Print stmt) {
+  public Completion visitPrintStmt(Stmt.Print stmt) {
     Object value = evaluate(stmt.expression);
     System.out.println(value);
-    return null;
+    return Completion.NORMAL;
   }
 
   @Override
-  public Void visitBlockStmt(Stmt.Block stmt) {
-    executeBlock(stmt.statements, new Environment(environment));
-    return null;
+  public Completion visitBlockStmt(Stmt.Block stmt) {
+    return executeBlock(stmt.statements, new Environment(environment, stmt.frameSize));
   }
 
   /*
   Interpreter helpers
   */
-  private void checkNumberOperand(Token operator, Object op) {
-    if (!(op instanceof Number)) {
-      throw new RuntimeError(operator, "Operands must be numeric.");
-    }
+  private boolean isTruthy(Object object) {
+    return Operators.isTruthy(object);
   }
 
-  private void checkNumberOperands(Token operator, Object op1, Object op2) {
-    if (!(op1 instanceof Number) || !(op2 instanceof Number)) {
-      throw new RuntimeError(operator, "Operands must be numeric.");
-    }
+  Object lookUpGlobal(Token name) {
+    return globals.get(name);
   }
 
-  private void checkIntegerOperand(Token operator, Object op1) {
-    if (!(op1 instanceof Integer)) {
-      throw new RuntimeError(operator, "Operand must be an integer.");
-    }
+  Object lookUpGlobal(int cell, Token name) {
+    return globals.getGlobal(cell, name);
   }
 
-  private void checkIntegerOperands(Token operator, Object op1, Object op2) {
-    if (!(op1 instanceof Integer) || !(op2 instanceof Integer)) {
-      throw new RuntimeError(operator, "Operands must be integers.");
-    }
-  }
-
-  private boolean isTruthy(Object object) {
-    if (object == null) return false;
-    if (object instanceof Boolean) return (Boolean)object;
-    if (object instanceof Number) return !(object).equals(0);
-    return true;
+  void assignGlobal(int cell, Token name, Object value) {
+    globals.assignGlobal(cell, name, value);
   }
 
-  private Object lookUpVariable(Token name, Expr expr) {
-    Integer distance = locals.get(expr);
-    if (distance != null) {
-      return environment.getAt(distance, name.lexeme);
+  private Object lookUpVariable(Expr.Variable expr) {
+    if (expr.depth >= 0) {
+      return environment.getAt(expr.depth, expr.slot);
     } else {
-      return globals.get(name);
+      return globals.getGlobal(expr.slot, expr.name);
     }
   }
 }
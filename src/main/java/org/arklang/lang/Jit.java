@@ -0,0 +1,112 @@
+package org.arklang.lang;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Tiered execution of lambdas. Every lambda starts out tree-walked; once it
+ * has been called {@link #threshold()} times its body is compiled to JVM
+ * bytecode and all further calls run the compiled class.
+ *
+ * Bodies the {@link JitCompiler} cannot handle are remembered as such and
+ * stay interpreted.
+ */
+public final class Jit {
+
+  static final int DEFAULT_THRESHOLD = 1000;
+
+  private static final String PACKAGE = "org/arklang/lang/jit/";
+
+  private static final CompiledLambda UNCOMPILABLE = new CompiledLambda(new Object[0]) {
+    @Override
+    public Object invoke(Interpreter interpreter, Environment closure, Object[] args) {
+      throw new IllegalStateException("Lambda was not compiled.");
+    }
+  };
+
+  private static final CompiledLambda COMPILING = new CompiledLambda(new Object[0]) {
+    @Override
+    public Object invoke(Interpreter interpreter, Environment closure, Object[] args) {
+      throw new IllegalStateException("Lambda is still being compiled.");
+    }
+  };
+
+  private static final AtomicReferenceFieldUpdater<Expr.Lambda, CompiledLambda> STATE =
+      AtomicReferenceFieldUpdater.newUpdater(Expr.Lambda.class, CompiledLambda.class, "compiled");
+
+  private static volatile int threshold = DEFAULT_THRESHOLD;
+  private static final AtomicInteger compiled = new AtomicInteger();
+  private static final AtomicInteger classes = new AtomicInteger();
+
+  /**
+   * Each compiled lambda gets a loader of its own so its class can be
+   * unloaded together with the syntax tree it was compiled from.
+   */
+  private static class Loader extends ClassLoader {
+    Loader() {
+      super(Jit.class.getClassLoader());
+    }
+
+    Class<?> define(String name, byte[] classFile) {
+      return defineClass(name, classFile, 0, classFile.length);
+    }
+  }
+
+  private Jit() {}
+
+  /**
+   * Number of calls after which a lambda is compiled, 0 disables the JIT.
+   */
+  public static int threshold() {
+    return threshold;
+  }
+
+  public static void setThreshold(int calls) {
+    threshold = Math.max(0, calls);
+  }
+
+  /**
+   * Number of lambdas compiled to bytecode so far.
+   */
+  public static int compiledCount() {
+    return compiled.get();
+  }
+
+  /**
+   * Counts a call of the lambda and returns its compiled body, if there is
+   * (or now is) one.
+   *
+   * The count is not atomic, as a lost call only delays compilation. The
+   * compile itself is claimed with a CAS on the declaration, so a lambda hot
+   * on several threads is compiled once; the other threads keep walking the
+   * tree until it is done.
+   */
+  static CompiledLambda compiled(Expr.Lambda declaration) {
+    CompiledLambda body = declaration.compiled;
+    if (body != null) return body == UNCOMPILABLE || body == COMPILING ? null : body;
+
+    int calls = threshold;
+    if (calls <= 0 || ++declaration.calls < calls) return null;
+    if (!STATE.compareAndSet(declaration, null, COMPILING)) return null;
+
+    body = compile(declaration);
+    declaration.compiled = body;
+    return body == UNCOMPILABLE ? null : body;
+  }
+
+  private static CompiledLambda compile(Expr.Lambda declaration) {
+    String name = PACKAGE + "Lambda" + classes.incrementAndGet();
+    try {
+      JitCompiler.Output output = JitCompiler.compile(declaration, name);
+      Class<?> type = new Loader().define(name.replace('/', '.'), output.classFile);
+      CompiledLambda body = (CompiledLambda) type
+          .getConstructor(Object[].class)
+          .newInstance((Object) output.constants);
+      compiled.incrementAndGet();
+      return body;
+    } catch (JitCompiler.Unsupported | ClassFileWriter.LimitExceeded
+        | ReflectiveOperationException | LinkageError e) {
+      return UNCOMPILABLE;
+    }
+  }
+}
@@ -0,0 +1,538 @@
+package org.arklang.lang;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.arklang.lang.ClassFileWriter.*;
+
+/**
+ * Translates the body of a lambda into the JVM bytecode of a
+ * {@link CompiledLambda} subclass.
+ *
+ * Parameters and variables declared inside the body live in JVM locals, which
+ * is only sound while nothing can capture them. Bodies containing nested
+ * lambdas are therefore rejected and stay with the tree-walking interpreter.
+ */
+class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+  private static final String SUPER = "org/arklang/lang/CompiledLambda";
+  private static final String RUNTIME = "org/arklang/lang/JitRuntime";
+  private static final String OBJECT = "Ljava/lang/Object;";
+  private static final String TOKEN = "Lorg/arklang/lang/Token;";
+  private static final String ITERATOR = "Ljava/util/Iterator;";
+  private static final String INVOKE = "(Lorg/arklang/lang/Interpreter;" +
+      "Lorg/arklang/lang/Environment;[Ljava/lang/Object;)Ljava/lang/Object;";
+
+  private static final int THIS = 0;
+  private static final int INTERPRETER = 1;
+  private static final int CLOSURE = 2;
+  private static final int ARGS = 3;
+
+  private static final Map<TokenType, String> binaryOps = new EnumMap<>(TokenType.class);
+  private static final Map<TokenType, String> unaryOps = new EnumMap<>(TokenType.class);
+
+  static {
+    binaryOps.put(TokenType.PLUS, "add");
+    binaryOps.put(TokenType.MINUS, "subtract");
+    binaryOps.put(TokenType.STAR, "multiply");
+    binaryOps.put(TokenType.SLASH, "divide");
+    binaryOps.put(TokenType.PERCENT, "modulo");
+    binaryOps.put(TokenType.STAR_STAR, "power");
+    binaryOps.put(TokenType.GREATER, "greater");
+    binaryOps.put(TokenType.GREATER_EQUAL, "greaterEqual");
+    binaryOps.put(TokenType.LESS, "less");
+    binaryOps.put(TokenType.LESS_EQUAL, "lessEqual");
+    binaryOps.put(TokenType.EQUAL_EQUAL, "equal");
+    binaryOps.put(TokenType.BANG_EQUAL, "notEqual");
+    binaryOps.put(TokenType.AMPERSAND, "bitAnd");
+    binaryOps.put(TokenType.CARET, "bitXor");
+    binaryOps.put(TokenType.PIPE, "bitOr");
+    binaryOps.put(TokenType.LEFT_SHIFT, "leftShift");
+    binaryOps.put(TokenType.RIGHT_SHIFT, "rightShift");
+    binaryOps.put(TokenType.U_RIGHT_SHIFT, "unsignedRightShift");
+    binaryOps.put(TokenType.AND, "and");
+    binaryOps.put(TokenType.OR, "or");
+
+    unaryOps.put(TokenType.BANG, "not");
+    unaryOps.put(TokenType.MINUS, "negate");
+    unaryOps.put(TokenType.TILDE, "bitNot");
+  }
+
+  /**
+   * Thrown when a lambda body uses something the compiler cannot translate.
+   */
+  static class Unsupported extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    Unsupported(String message) {
+      super(message, null, false, false);
+    }
+  }
+
+  private final ClassFileWriter writer;
+  private final ClassFileWriter.Code code;
+  private final List<ClassFileWriter.Label> labels = new ArrayList<>();
+  private final List<Object> constants = new ArrayList<>();
+  private final Map<Object, Integer> constantIndices = new IdentityHashMap<>();
+  private final List<Map<String, Integer>> scopes = new ArrayList<>();
+  private ClassFileWriter.Label loopExit = null;
+  private int nextLocal = ARGS + 1;
+  private int closureDistance;
+
+  private JitCompiler(String className) {
+    this.writer = new ClassFileWriter(className, SUPER);
+    this.code = writer.code(ARGS + 1);
+  }
+
+  /**
+   * The class file produced for a lambda together with the constants its
+   * constructor has to be given.
+   */
+  static class Output {
+    final byte[] classFile;
+    final Object[] constants;
+
+    Output(byte[] classFile, Object[] constants) {
+      this.classFile = classFile;
+      this.constants = constants;
+    }
+  }
+
+  static Output compile(Expr.Lambda lambda, String className) {
+    JitCompiler compiler = new JitCompiler(className);
+    compiler.constructor();
+    compiler.body(lambda);
+    return new Output(compiler.writer.toByteArray(), compiler.constants.toArray());
+  }
+
+  private void constructor() {
+    ClassFileWriter.Code ctor = writer.code(2);
+    ctor.aload(THIS);
+    ctor.aload(1);
+    ctor.invoke(INVOKESPECIAL, SUPER, "<init>", "([" + OBJECT + ")V", -2);
+    ctor.op(RETURN, 0);
+    writer.method("<init>", "([" + OBJECT + ")V", ctor, new ArrayList<>());
+  }
+
+  private void body(Expr.Lambda lambda) {
+    beginScope();
+    if (lambda.parameters != null) {
+      for (int i = 0; i < lambda.parameters.size(); ++i) {
+        int slot = declare(lambda.parameters.get(i));
+        code.aload(ARGS);
+        code.iconst(i);
+        code.op(AALOAD, -1);
+        code.local(ASTORE, slot, -1);
+      }
+    }
+    compile(lambda.body);
+    code.op(ACONST_NULL, 1);
+    code.op(ARETURN, -1);
+    writer.method("invoke", INVOKE, code, labels);
+  }
+
+  /*
+  Helpers
+   */
+  private void beginScope() {
+    scopes.add(new HashMap<>());
+  }
+
+  private void endScope() {
+    scopes.remove(scopes.size() - 1);
+  }
+
+  private int declare(Token name) {
+    int slot = nextLocal++;
+    scopes.get(scopes.size() - 1).put(name.lexeme, slot);
+    return slot;
+  }
+
+  private ClassFileWriter.Label label() {
+    ClassFileWriter.Label label = new ClassFileWriter.Label();
+    labels.add(label);
+    return label;
+  }
+
+  private void constant(Object value, String internalName) {
+    Integer index = constantIndices.get(value);
+    if (index == null) {
+      index = constants.size();
+      constants.add(value);
+      constantIndices.put(value, index);
+    }
+    code.aload(THIS);
+    code.field(GETFIELD, SUPER, "constants", "[" + OBJECT, 0);
+    code.iconst(index);
+    code.op(AALOAD, -1);
+    if (internalName != null) {
+      code.type(CHECKCAST, internalName);
+    }
+  }
+
+  private void token(Token token) {
+    constant(token, "org/arklang/lang/Token");
+  }
+
+  private void runtime(String name, String descriptor, int stackEffect) {
+    code.invoke(INVOKESTATIC, RUNTIME, name, descriptor, stackEffect);
+  }
+
+  private void compile(List<Stmt> statements) {
+    for (Stmt stmt : statements) {
+      stmt.accept(this);
+    }
+  }
+
+  private void compile(Expr expr) {
+    expr.accept(this);
+  }
+
+  private void condition(Expr expr, ClassFileWriter.Label otherwise) {
+    compile(expr);
+    runtime("truthy", "(" + OBJECT + ")Z", 0);
+    code.jump(IFEQ, otherwise, -1);
+  }
+
+  private void objectArray(List<Expr> items) {
+    code.iconst(items.size());
+    code.type(ANEWARRAY, "java/lang/Object");
+    for (int i = 0; i < items.size(); ++i) {
+      code.op(DUP, 1);
+      code.iconst(i);
+      compile(items.get(i));
+      code.op(AASTORE, -3);
+    }
+  }
+
+  /**
+   * JVM local holding a variable declared in the compiled body. Returns -1
+   * for a variable of the closure (its distance is left in closureDistance)
+   * and -2 for a global.
+   */
+  private int slot(int depth, Token name) {
+    if (depth < 0) return -2;
+    if (depth < scopes.size()) {
+      Integer slot = scopes.get(scopes.size() - 1 - depth).get(name.lexeme);
+      if (slot == null) throw new Unsupported("Unresolved local " + name.lexeme);
+      return slot;
+    }
+    closureDistance = depth - scopes.size();
+    return -1;
+  }
+
+  /*
+  Statements
+   */
+  @Override
+  public Void visitBlockStmt(Stmt.Block stmt) {
+    beginScope();
+    compile(stmt.statements);
+    endScope();
+    return null;
+  }
+
+  @Override
+  public Void visitExpressionStmt(Stmt.Expression stmt) {
+    compile(stmt.expression);
+    code.op(POP, -1);
+    return null;
+  }
+
+  @Override
+  public Void visitIfStmt(Stmt.If stmt) {
+    ClassFileWriter.Label otherwise = label();
+    condition(stmt.condition, otherwise);
+    stmt.thenBranch.accept(this);
+    if (stmt.elseBranch != null) {
+      ClassFileWriter.Label end = label();
+      code.jump(GOTO, end, 0);
+      code.mark(otherwise);
+      stmt.elseBranch.accept(this);
+      code.mark(end);
+    } else {
+      code.mark(otherwise);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStmt(Stmt.While stmt) {
+    ClassFileWriter.Label start = label();
+    ClassFileWriter.Label exit = label();
+    ClassFileWriter.Label previousExit = loopExit;
+    loopExit = exit;
+
+    code.mark(start);
+    condition(stmt.condition, exit);
+    stmt.body.accept(this);
+    code.jump(GOTO, start, 0);
+    code.mark(exit);
+
+    loopExit = previousExit;
+    return null;
+  }
+
+  @Override
+  public Void visitForInStmt(Stmt.ForIn stmt) {
+    ClassFileWriter.Label start = label();
+    ClassFileWriter.Label exit = label();
+    ClassFileWriter.Label previousExit = loopExit;
+    loopExit = exit;
+
+    int item = declare(stmt.itemIterator);
+    int index = -1;
+    int counter = -1;
+    if (stmt.indexIterator != null) {
+      index = declare(stmt.indexIterator);
+      counter = nextLocal++;
+      code.iconst(0);
+      code.local(ISTORE, counter, -1);
+    }
+
+    int iterator = nextLocal++;
+    token(stmt.token);
+    compile(stmt.enumerable);
+    runtime("iterator", "(" + TOKEN + OBJECT + ")" + ITERATOR, -1);
+    code.local(ASTORE, iterator, -1);
+
+    code.mark(start);
+    code.aload(iterator);
+    runtime("hasNext", "(" + ITERATOR + ")Z", 0);
+    code.jump(IFEQ, exit, -1);
+    code.aload(iterator);
+    runtime("next", "(" + ITERATOR + ")" + OBJECT, 0);
+    code.local(ASTORE, item, -1);
+    if (index >= 0) {
+      code.local(ILOAD, counter, 1);
+      runtime("box", "(I)" + OBJECT, 0);
+      code.local(ASTORE, index, -1);
+      code.iinc(counter, 1);
+    }
+    stmt.body.accept(this);
+    code.jump(GOTO, start, 0);
+    code.mark(exit);
+
+    loopExit = previousExit;
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    compile(stmt.expression);
+    runtime("print", "(" + OBJECT + ")V", -1);
+    return null;
+  }
+
+  @Override
+  public Void visitSendStmt(Stmt.Send stmt) {
+    if (stmt.tail) {
+      Expr.Operation call = (Expr.Operation) stmt.value;
+      code.aload(INTERPRETER);
+      token(call.token);
+      compile(call.target);
+      objectArray(call.arguments);
+      runtime("tailCall", "(Lorg/arklang/lang/Interpreter;" + TOKEN + OBJECT + "[" + OBJECT + ")" + OBJECT, -3);
+    } else {
+      compile(stmt.value);
+    }
+    code.op(ARETURN, -1);
+    return null;
+  }
+
+  @Override
+  public Void visitLetStmt(Stmt.Let stmt) {
+    for (int i = 0; i < stmt.names.size(); ++i) {
+      Expr initializer = stmt.initializers.get(i);
+      if (initializer != null) {
+        compile(initializer);
+      } else {
+        code.op(ACONST_NULL, 1);
+      }
+      code.local(ASTORE, declare(stmt.names.get(i)), -1);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitBreakStmt(Stmt.Break stmt) {
+    if (loopExit == null) throw new Unsupported("break outside of a compiled loop");
+    code.jump(GOTO, loopExit, 0);
+    return null;
+  }
+
+  /*
+  Expressions
+   */
+  @Override
+  public Void visitAssignExpr(Expr.Assign expr) {
+    int slot = slot(expr.depth, expr.name);
+    if (slot >= 0) {
+      compile(expr.value);
+      code.op(DUP, 1);
+      code.local(ASTORE, slot, -1);
+    } else if (slot == -1) {
+      code.aload(CLOSURE);
+      code.iconst(closureDistance);
+      code.iconst(expr.slot);
+      compile(expr.value);
+      runtime("assignLocal", "(Lorg/arklang/lang/Environment;II" + OBJECT + ")" + OBJECT, -3);
+    } else {
+      code.aload(INTERPRETER);
+      code.iconst(expr.slot);
+      token(expr.name);
+      compile(expr.value);
+      runtime("assignGlobal", "(Lorg/arklang/lang/Interpreter;I" + TOKEN + OBJECT + ")" + OBJECT, -3);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitVariableExpr(Expr.Variable expr) {
+    int slot = slot(expr.depth, expr.name);
+    if (slot >= 0) {
+      code.aload(slot);
+    } else if (slot == -1) {
+      code.aload(CLOSURE);
+      code.iconst(closureDistance);
+      code.iconst(expr.slot);
+      runtime("local", "(Lorg/arklang/lang/Environment;II)" + OBJECT, -2);
+    } else {
+      code.aload(INTERPRETER);
+      code.iconst(expr.slot);
+      token(expr.name);
+      runtime("global", "(Lorg/arklang/lang/Interpreter;I" + TOKEN + ")" + OBJECT, -2);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitOperationExpr(Expr.Operation expr) {
+    code.aload(INTERPRETER);
+    token(expr.token);
+    compile(expr.target);
+    objectArray(expr.arguments);
+    runtime("call", "(Lorg/arklang/lang/Interpreter;" + TOKEN + OBJECT + "[" + OBJECT + ")" + OBJECT, -3);
+    return null;
+  }
+
+  @Override
+  public Void visitBinaryExpr(Expr.Binary expr) {
+    String name = binaryOps.getOrDefault(expr.operator.type, "binary");
+    token(expr.operator);
+    compile(expr.left);
+    compile(expr.right);
+    runtime(name, "(" + TOKEN + OBJECT + OBJECT + ")" + OBJECT, -2);
+    return null;
+  }
+
+  @Override
+  public Void visitUnaryExpr(Expr.Unary expr) {
+    String name = unaryOps.get(expr.operator.type);
+    if (name == null) throw new Unsupported("unary " + expr.operator.lexeme);
+    token(expr.operator);
+    compile(expr.right);
+    runtime(name, "(" + TOKEN + OBJECT + ")" + OBJECT, -1);
+    return null;
+  }
+
+  @Override
+  public Void visitLiteralExpr(Expr.Literal expr) {
+    if (expr.value == null) {
+      code.op(ACONST_NULL, 1);
+    } else {
+      constant(expr.value, null);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitTernaryExpr(Expr.Ternary expr) {
+    ClassFileWriter.Label otherwise = label();
+    ClassFileWriter.Label end = label();
+    condition(expr.condition, otherwise);
+    compile(expr.expr1);
+    code.jump(GOTO, end, 0);
+    code.mark(otherwise);
+    code.adjust(-1);
+    compile(expr.expr2);
+    code.mark(end);
+    return null;
+  }
+
+  @Override
+  public Void visitLambdaExpr(Expr.Lambda expr) {
+    throw new Unsupported("nested lambda");
+  }
+
+  @Override
+  public Void visitArrayExpr(Expr.Array expr) {
+    objectArray(expr.items);
+    runtime("array", "([" + OBJECT + ")" + OBJECT, 0);
+    return null;
+  }
+
+  @Override
+  public Void visitDictExpr(Expr.Dict expr) {
+    List<Expr> entries = new ArrayList<>();
+    for (int i = 0; i < expr.keys.size(); ++i) {
+      entries.add(expr.keys.get(i));
+      entries.add(expr.values.get(i));
+    }
+    token(expr.token);
+    objectArray(entries);
+    runtime("dict", "(" + TOKEN + "[" + OBJECT + ")" + OBJECT, -1);
+    return null;
+  }
+
+  @Override
+  public Void visitPipeExpr(Expr.Pipe expr) {
+    throw new Unsupported("pipeline");
+  }
+
+  @Override
+  public Void visitStrExpr(Expr.Str expr) {
+    constant(ArkString.prototype(expr), "org/arklang/lang/ArkString");
+    runtime("string", "(Lorg/arklang/lang/ArkString;)" + OBJECT, 0);
+    return null;
+  }
+
+  @Override
+  public Void visitCharExpr(Expr.Char expr) {
+    constant(expr.c, null);
+    return null;
+  }
+
+  @Override
+  public Void visitIndexGetExpr(Expr.IndexGet expr) {
+    token(expr.token);
+    compile(expr.indexee);
+    compile(expr.index);
+    runtime("indexGet", "(" + TOKEN + OBJECT + OBJECT + ")" + OBJECT, -2);
+    return null;
+  }
+
+  @Override
+  public Void visitIndexSetExpr(Expr.IndexSet expr) {
+    token(expr.token);
+    compile(expr.indexee);
+    compile(expr.index);
+    compile(expr.value);
+    runtime("indexSet", "(" + TOKEN + OBJECT + OBJECT + OBJECT + ")" + OBJECT, -3);
+    return null;
+  }
+
+  @Override
+  public Void visitRangeExpr(Expr.Range expr) {
+    token(expr.token);
+    compile(expr.lower);
+    compile(expr.upper);
+    code.iconst(expr.closed ? 1 : 0);
+    runtime("range", "(" + TOKEN + OBJECT + OBJECT + "Z)" + OBJECT, -3);
+    return null;
+  }
+}
@@ -0,0 +1,211 @@
+package org.arklang.lang;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * Entry points called from JIT compiled lambda bodies. Generated classes live
+ * in a different runtime package, so these bridge to package-private code.
+ */
+public final class JitRuntime {
+
+  private JitRuntime() {}
+
+  /*
+  Variables
+   */
+  public static Object global(Interpreter interpreter, int cell, Token name) {
+    return interpreter.lookUpGlobal(cell, name);
+  }
+
+  public static Object assignGlobal(Interpreter interpreter, int cell, Token name, Object value) {
+    interpreter.assignGlobal(cell, name, value);
+    return value;
+  }
+
+  public static Object local(Environment closure, int distance, int slot) {
+    return closure.getAt(distance, slot);
+  }
+
+  public static Object assignLocal(Environment closure, int distance, int slot, Object value) {
+    closure.assignAt(distance, slot, value);
+    return value;
+  }
+
+  /*
+  Operators
+   */
+  public static boolean truthy(Object value) {
+    return Operators.isTruthy(value);
+  }
+
+  public static Object add(Token operator, Object left, Object right) {
+    return Operators.add(operator, left, right);
+  }
+
+  public static Object subtract(Token operator, Object left, Object right) {
+    return Operators.subtract(operator, left, right);
+  }
+
+  public static Object multiply(Token operator, Object left, Object right) {
+    return Operators.multiply(operator, left, right);
+  }
+
+  public static Object divide(Token operator, Object left, Object right) {
+    return Operators.divide(operator, left, right);
+  }
+
+  public static Object modulo(Token operator, Object left, Object right) {
+    return Operators.modulo(operator, left, right);
+  }
+
+  public static Object power(Token operator, Object left, Object right) {
+    return Operators.power(operator, left, right);
+  }
+
+  public static Object greater(Token operator, Object left, Object right) {
+    return Operators.greater(operator, left, right);
+  }
+
+  public static Object greaterEqual(Token operator, Object left, Object right) {
+    return Operators.greaterEqual(operator, left, right);
+  }
+
+  public static Object less(Token operator, Object left, Object right) {
+    return Operators.less(operator, left, right);
+  }
+
+  public static Object lessEqual(Token operator, Object left, Object right) {
+    return Operators.lessEqual(operator, left, right);
+  }
+
+  public static Object equal(Token operator, Object left, Object right) {
+    return Operators.equal(operator, left, right);
+  }
+
+  public static Object notEqual(Token operator, Object left, Object right) {
+    return Operators.notEqual(operator, left, right);
+  }
+
+  public static Object bitAnd(Token operator, Object left, Object right) {
+    return Operators.bitAnd(operator, left, right);
+  }
+
+  public static Object bitXor(Token operator, Object left, Object right) {
+    return Operators.bitXor(operator, left, right);
+  }
+
+  public static Object bitOr(Token operator, Object left, Object right) {
+    return Operators.bitOr(operator, left, right);
+  }
+
+  public static Object leftShift(Token operator, Object left, Object right) {
+    return Operators.leftShift(operator, left, right);
+  }
+
+  public static Object rightShift(Token operator, Object left, Object right) {
+    return Operators.rightShift(operator, left, right);
+  }
+
+  public static Object unsignedRightShift(Token operator, Object left, Object right) {
+    return Operators.unsignedRightShift(operator, left, right);
+  }
+
+  public static Object and(Token operator, Object left, Object right) {
+    return Operators.isTruthy(left) && Operators.isTruthy(right);
+  }
+
+  public static Object or(Token operator, Object left, Object right) {
+    return Operators.isTruthy(left) || Operators.isTruthy(right);
+  }
+
+  public static Object binary(Token operator, Object left, Object right) {
+    return Operators.binary(operator, left, right);
+  }
+
+  public static Object not(Token operator, Object right) {
+    return !Operators.isTruthy(right);
+  }
+
+  public static Object negate(Token operator, Object right) {
+    return Operators.negate(operator, right);
+  }
+
+  public static Object bitNot(Token operator, Object right) {
+    return Operators.bitNot(operator, right);
+  }
+
+  /*
+  Calls
+   */
+  public static Object call(Interpreter interpreter, Token token, Object target, Object[] args) {
+    ArkCallable callable = Operators.checkCallable(token, target);
+    Operators.checkArity(token, callable, args.length);
+    if (callable instanceof Lambda) {
+      return ((Lambda) callable).invoke(interpreter, args);
+    }
+    return callable.call(interpreter, token, new ArrayList<>(Arrays.asList(args)));
+  }
+
+  public static Object tailCall(Interpreter interpreter, Token token, Object target, Object[] args) {
+    ArkCallable callable = Operators.checkCallable(token, target);
+    Operators.checkArity(token, callable, args.length);
+    if (callable instanceof Lambda) {
+      return new TailCall(callable, args);
+    }
+    return callable.call(interpreter, token, new ArrayList<>(Arrays.asList(args)));
+  }
+
+  /*
+  Collections & output
+   */
+  public static Object string(ArkString literal) {
+    return literal.share();
+  }
+
+  public static Object array(Object[] items) {
+    return new ArkArray(items);
+  }
+
+  public static Object indexGet(Token token, Object indexee, Object index) {
+    return Operators.indexGet(token, indexee, index);
+  }
+
+  public static Object indexSet(Token token, Object indexee, Object index, Object value) {
+    return Operators.indexSet(token, indexee, index, value);
+  }
+
+  public static Object dict(Token token, Object[] entries) {
+    return Operators.dict(token, entries);
+  }
+
+  public static Object range(Token token, Object lower, Object upper, boolean closed) {
+    return Operators.range(token, lower, upper, closed);
+  }
+
+  public static Iterator<?> iterator(Token token, Object enumerable) {
+    if (!(enumerable instanceof ArkEnumerable)) {
+      Ark.error(token, "for stmt target must be enumerable.");
+      return Collections.emptyIterator();
+    }
+    return ((ArkEnumerable<?>) enumerable).iterator();
+  }
+
+  public static boolean hasNext(Iterator<?> iterator) {
+    return iterator.hasNext();
+  }
+
+  public static Object next(Iterator<?> iterator) {
+    return iterator.next();
+  }
+
+  public static Object box(int value) {
+    return value;
+  }
+
+  public static void print(Object value) {
+    System.out.println(value);
+  }
+}
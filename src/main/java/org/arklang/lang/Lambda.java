@@ -19,19 +19,35 @@ public class Lambda implements ArkCallable {
 
   @Override
   public Object call(Interpreter interpreter, List<Object> arguments) {
-    Environment env = new Environment(closure);
-    if (declaration.parameters != null) {
-      for (int i = 0; i < declaration.parameters.size(); ++i) {
-        env.define(declaration.parameters.get(i).lexeme, arguments.get(i));
-      }
+    return invoke(interpreter, arguments.toArray());
+  }
+
+  /**
+   * Calls the lambda, running any tail calls it sends in a loop here
+   * rather than on a growing Java stack.
+   */
+  Object invoke(Interpreter interpreter, Object[] arguments) {
+    Object result = execute(interpreter, arguments);
+    while (result instanceof TailCall) {
+      TailCall call = (TailCall) result;
+      result = ((Lambda) call.callee).execute(interpreter, call.arguments);
     }
+    return result;
+  }
 
-    try {
-      interpreter.executeBlock(declaration.body, env);
-    } catch (SendJump send) {
-      return send.value;
+  private Object execute(Interpreter interpreter, Object[] arguments) {
+    List<Stmt> body = LazyBody.force(declaration);
+    CompiledLambda compiled = Jit.compiled(declaration);
+    if (compiled != null) {
+      return compiled.invoke(interpreter, closure, arguments);
     }
 
+    Environment env = new Environment(closure, declaration.frameSize);
+    System.arraycopy(arguments, 0, env.slots, 0, arguments.length);
+
+    if (interpreter.executeBlock(body, env) == Completion.SEND) {
+      return interpreter.takeSent();
+    }
     return null;
   }
 }
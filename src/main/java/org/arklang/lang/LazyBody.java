@@ -0,0 +1,111 @@
+package org.arklang.lang;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Body of a lambda whose braces were matched but whose statements were not
+ * parsed, for scripts that define far more than they call.
+ *
+ * The resolver leaves such a body for later, keeping a copy of the scopes
+ * around it. The first time the statements are asked for, the tokens
+ * between the braces are parsed and resolved against that copy, and the
+ * tree is kept. Nested lambdas in the body are deferred in turn.
+ */
+final class LazyBody extends AbstractList<Stmt> {
+
+  private final TokenBuffer tokens;
+  private final int brace;
+  private final Token line;
+  private Expr.Lambda lambda;
+  private Resolver resolver;
+  private volatile List<Stmt> statements;
+  private RuntimeError failure;
+
+  /**
+   * A body from the left brace at {@code brace} to its matching right brace.
+   */
+  LazyBody(TokenBuffer tokens, int brace) {
+    this.tokens = tokens;
+    this.brace = brace;
+    this.line = tokens.token(brace);
+  }
+
+  /**
+   * Called by the resolver in place of resolving the body of {@code lambda},
+   * with a resolver in the state it would have had.
+   */
+  void defer(Expr.Lambda lambda, Resolver resolver) {
+    this.lambda = lambda;
+    this.resolver = resolver;
+  }
+
+  boolean isParsed() {
+    return statements != null;
+  }
+
+  /**
+   * The statements of a lambda's body, parsing them first if need be. The
+   * lambda's frame size is only known once they have been.
+   */
+  static List<Stmt> force(Expr.Lambda lambda) {
+    List<Stmt> body = lambda.body;
+    return body instanceof LazyBody ? ((LazyBody) body).statements() : body;
+  }
+
+  List<Stmt> statements() {
+    List<Stmt> parsed = statements;
+    return parsed != null ? parsed : parse();
+  }
+
+  @Override
+  public Stmt get(int index) {
+    return statements().get(index);
+  }
+
+  @Override
+  public int size() {
+    return statements().size();
+  }
+
+  @Override
+  public Iterator<Stmt> iterator() {
+    return statements().iterator();
+  }
+
+  /*
+  Parses and resolves the body once. Bodies are parsed under their own
+  lock, and errors are collected rather than flagged on Ark, so parses on
+  other threads go on meanwhile. A body with errors keeps the runtime error
+  that reports them, and throws it again on later calls.
+   */
+  private synchronized List<Stmt> parse() {
+    if (statements != null) return statements;
+    if (failure != null) throw failure;
+    if (resolver == null) {
+      throw new IllegalStateException("Lambda body parsed before it was resolved.");
+    }
+
+    List<CompileError.Problem> problems = new ArrayList<>();
+    List<Stmt> parsed = Ark.collectErrors(problems, () -> {
+      List<Stmt> body = new Parser(tokens, true).lambdaBody(brace);
+      if (problems.isEmpty()) {
+        resolver.resolveBody(lambda, body);
+      }
+      return body;
+    });
+    resolver = null;
+    if (!problems.isEmpty()) {
+      StringBuilder message = new StringBuilder("Lambda body has errors.");
+      for (CompileError.Problem problem : problems) {
+        message.append('\n').append(problem);
+      }
+      failure = new RuntimeError(line, message.toString());
+      throw failure;
+    }
+    statements = parsed;
+    return parsed;
+  }
+}
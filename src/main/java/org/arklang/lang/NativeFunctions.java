@@ -1,14 +1,32 @@
 package org.arklang.lang;
 
 import java.util.List;
+import java.util.function.BiConsumer;
 
 public class NativeFunctions {
   public static void define(Environment env) {
-    env.define("out", out);
-    env.define("random", random);
-    env.define("stime", stime);
-    env.define("len", len);
-    env.define("add", add);
+    define(env::define);
+  }
+
+  static void define(BiConsumer<String, Object> definer) {
+    definer.accept("out", out);
+    definer.accept("random", random);
+    definer.accept("stime", stime);
+    definer.accept("len", len);
+    definer.accept("add", add);
+    definer.accept("vector", vector);
+    definer.accept("vec", vec);
+    definer.accept("assoc", assoc);
+    definer.accept("conj", conj);
+    definer.accept("pmap", pmap);
+    definer.accept("pfilter", pfilter);
+    definer.accept("preduce", preduce);
+    definer.accept("spawn", spawn);
+    definer.accept("await", await);
+    definer.accept("chan", chan);
+    definer.accept("put", put);
+    definer.accept("take", take);
+    definer.accept("close", close);
   }
 
   /**
@@ -103,4 +121,263 @@ public class NativeFunctions {
       return null;
     }
   };
+
+  /**
+   * Make a persistent vector of the arguments.
+   */
+  private final static ArkCallable vector = new ArkCallable() {
+    @Override
+    public int arity() {
+      return 0;
+    }
+
+    @Override
+    public boolean variadic() {
+      return true;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+      return ArkVector.of(arguments);
+    }
+  };
+
+  /**
+   * Make a persistent vector of the items of a collection.
+   */
+  private final static ArkCallable vec = new ArkCallable() {
+    @Override
+    public int arity() {
+      return 1;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+      Object items = arguments.get(0);
+      if (items instanceof ArkVector) {
+        return items;
+      }
+      if (items instanceof ArkEnumerable) {
+        return ArkVector.of((ArkEnumerable<?>) items);
+      }
+      throw new RuntimeError(null, "vec target must be enumerable.");
+    }
+  };
+
+  /**
+   * Vector with one item replaced: (assoc vector index value).
+   */
+  private final static ArkCallable assoc = new ArkCallable() {
+    @Override
+    public int arity() {
+      return 3;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+      return checkVector(arguments.get(0), "assoc")
+          .assoc(null, arguments.get(1), arguments.get(2));
+    }
+  };
+
+  /**
+   * Vector with items appended: (conj vector items...).
+   */
+  private final static ArkCallable conj = new ArkCallable() {
+    @Override
+    public int arity() {
+      return 0;
+    }
+
+    @Override
+    public boolean variadic() {
+      return true;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+      ArkVector vector = checkVector(arguments.isEmpty() ? null : arguments.get(0), "conj");
+      for (int i = 1; i < arguments.size(); ++i) {
+        vector = vector.conj(arguments.get(i));
+      }
+      return vector;
+    }
+  };
+
+  /**
+   * Parallel map: (pmap collection lambda).
+   */
+  private final static ArkCallable pmap = new ArkCallable() {
+    @Override
+    public int arity() {
+      return 2;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+      return call(interpreter, null, arguments);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Token token, List<Object> arguments) {
+      return Parallel.map(interpreter, token, arguments.get(0), arguments.get(1));
+    }
+  };
+
+  /**
+   * Parallel filter: (pfilter collection lambda).
+   */
+  private final static ArkCallable pfilter = new ArkCallable() {
+    @Override
+    public int arity() {
+      return 2;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+      return call(interpreter, null, arguments);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Token token, List<Object> arguments) {
+      return Parallel.filter(interpreter, token, arguments.get(0), arguments.get(1));
+    }
+  };
+
+  /**
+   * Parallel reduce with an associative lambda: (preduce collection lambda initial).
+   */
+  private final static ArkCallable preduce = new ArkCallable() {
+    @Override
+    public int arity() {
+      return 3;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+      return call(interpreter, null, arguments);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Token token, List<Object> arguments) {
+      return Parallel.reduce(interpreter, token, arguments.get(0), arguments.get(1), arguments.get(2));
+    }
+  };
+
+  /**
+   * Run a lambda as a task: (spawn lambda args...).
+   */
+  private final static ArkCallable spawn = new ArkCallable() {
+    @Override
+    public int arity() {
+      return 1;
+    }
+
+    @Override
+    public boolean variadic() {
+      return true;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+      if (arguments.isEmpty()) {
+        throw new RuntimeError(null, "Expected a lambda to spawn.");
+      }
+      return Tasks.spawn(interpreter, arguments.get(0), arguments.subList(1, arguments.size()));
+    }
+  };
+
+  /**
+   * Wait for a task and give the value it sent: (await task).
+   */
+  private final static ArkCallable await = new ArkCallable() {
+    @Override
+    public int arity() {
+      return 1;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+      if (!(arguments.get(0) instanceof Tasks.Task)) {
+        throw new RuntimeError(null, "await target must be a task.");
+      }
+      return ((Tasks.Task) arguments.get(0)).await();
+    }
+  };
+
+  /**
+   * Make a channel holding up to capacity values: (chan capacity).
+   */
+  private final static ArkCallable chan = new ArkCallable() {
+    @Override
+    public int arity() {
+      return 1;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+      return new ArkChannel(null, arguments.get(0));
+    }
+  };
+
+  /**
+   * Put a value to a channel, waiting while it is full: (put channel value).
+   */
+  private final static ArkCallable put = new ArkCallable() {
+    @Override
+    public int arity() {
+      return 2;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+      checkChannel(arguments.get(0), "put").put(null, arguments.get(1));
+      return null;
+    }
+  };
+
+  /**
+   * Take a value from a channel, waiting while it is empty: (take channel).
+   */
+  private final static ArkCallable take = new ArkCallable() {
+    @Override
+    public int arity() {
+      return 1;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+      return checkChannel(arguments.get(0), "take").take();
+    }
+  };
+
+  /**
+   * Close a channel to further puts: (close channel).
+   */
+  private final static ArkCallable close = new ArkCallable() {
+    @Override
+    public int arity() {
+      return 1;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+      checkChannel(arguments.get(0), "close").close();
+      return null;
+    }
+  };
+
+  private static ArkChannel checkChannel(Object value, String name) {
+    if (!(value instanceof ArkChannel)) {
+      throw new RuntimeError(null, name + " target must be a channel.");
+    }
+    return (ArkChannel) value;
+  }
+
+  private static ArkVector checkVector(Object value, String name) {
+    if (!(value instanceof ArkVector)) {
+      throw new RuntimeError(null, name + " target must be a vector.");
+    }
+    return (ArkVector) value;
+  }
 }
@@ -0,0 +1,97 @@
+package org.arklang.lang;
+
+/**
+ * Instruction set of the bytecode VM. Each instruction is an opcode
+ * followed inline by its operands, all stored as ints in {@link Chunk#code}.
+ */
+final class OpCode {
+
+  private OpCode() {}
+
+  /*
+  Constants & stack
+   */
+  static final int CONSTANT = 0;        // [index]         -> value
+  static final int NIL = 1;             //                 -> nil
+  static final int TRUE = 2;            //                 -> true
+  static final int FALSE = 3;           //                 -> false
+  static final int POP = 4;             // value           ->
+  static final int DUP = 5;             // value           -> value value
+  static final int STRING = 6;          // [index]         -> ArkString
+
+  /*
+  Variables. Locals are addressed by (depth, slot) into the frame chain.
+   */
+  static final int GET_LOCAL = 10;      // [depth, slot]   -> value
+  static final int SET_LOCAL = 11;      // [depth, slot]   value -> value
+  static final int DEFINE_LOCAL = 12;   // [slot]          value ->
+  static final int GET_GLOBAL = 13;     // [index]         -> value
+  static final int SET_GLOBAL = 14;     // [index]         value -> value
+  static final int DEFINE_GLOBAL = 15;  // [index]         value ->
+  static final int GET_LOCAL0 = 16;     // [slot]          -> value
+
+  /*
+  Operators
+   */
+  static final int ADD = 20;
+  static final int SUBTRACT = 21;
+  static final int MULTIPLY = 22;
+  static final int DIVIDE = 23;
+  static final int MODULO = 24;
+  static final int POWER = 25;
+  static final int GREATER = 26;
+  static final int GREATER_EQUAL = 27;
+  static final int LESS = 28;
+  static final int LESS_EQUAL = 29;
+  static final int EQUAL = 30;
+  static final int NOT_EQUAL = 31;
+  static final int BIT_AND = 32;
+  static final int BIT_XOR = 33;
+  static final int BIT_OR = 34;
+  static final int LEFT_SHIFT = 35;
+  static final int RIGHT_SHIFT = 36;
+  static final int U_RIGHT_SHIFT = 37;
+  static final int AND = 38;
+  static final int OR = 39;
+  static final int NOT = 40;
+  static final int NEGATE = 41;
+  static final int BIT_NOT = 42;
+
+  /*
+  Control flow. Jump operands are absolute code offsets.
+   */
+  static final int JUMP = 50;           // [target]
+  static final int JUMP_IF_FALSE = 51;  // [target]        condition ->
+  static final int CALL = 52;           // [argc]          target args... -> result
+  static final int RETURN = 53;         //                 value ->
+  static final int CLOSURE = 54;        // [index]         -> closure
+  static final int PUSH_FRAME = 55;     // [size]
+  static final int POP_FRAME = 56;
+  static final int ITERATOR = 57;       //                 enumerable -> iterator
+  static final int FOR_ITER = 58;       // [indexed, exit] iterator -> iterator item (index)
+  static final int TAIL_CALL = 59;      // [argc]          target args... -> result, then RETURN
+
+  /*
+  Superinstructions: a comparison fused with the conditional jump that
+  consumes it.
+   */
+  static final int JUMP_UNLESS_EQUAL = 70;          // [target] left right ->
+  static final int JUMP_UNLESS_NOT_EQUAL = 71;
+  static final int JUMP_UNLESS_LESS = 72;
+  static final int JUMP_UNLESS_LESS_EQUAL = 73;
+  static final int JUMP_UNLESS_GREATER = 74;
+  static final int JUMP_UNLESS_GREATER_EQUAL = 75;
+
+  /*
+  Collections & output
+   */
+  static final int ARRAY = 60;          // [count]         items... -> array
+  static final int INDEX_GET = 61;      //                 indexee index -> value
+  static final int INDEX_SET = 62;      //                 indexee index value -> value
+  static final int RANGE = 63;          // [closed]        lower upper -> array
+  static final int PRINT = 64;          //                 value ->
+  static final int ECHO = 65;           //                 value ->
+  static final int DICT = 66;           // [count]         key value... -> dict
+  static final int STAGE = 67;          // [argc, filter]  callable args... -> stage
+  static final int PIPE = 68;           // [count]         source stages... -> array
+}
@@ -0,0 +1,314 @@
+package org.arklang.lang;
+
+/**
+ * Operator semantics shared by every execution engine (tree-walking
+ * interpreter and bytecode VM), so that both agree on the result of
+ * every operation.
+ */
+public class Operators {
+
+  private Operators() {}
+
+  static Object binary(Token operator, Object left, Object right) {
+    switch (operator.type) {
+      /*
+      Number Operations
+       */
+      case PLUS: return add(operator, left, right);
+      case MINUS: return subtract(operator, left, right);
+      case STAR: return multiply(operator, left, right);
+      case SLASH: return divide(operator, left, right);
+      case PERCENT: return modulo(operator, left, right);
+      case STAR_STAR: return power(operator, left, right);
+      case GREATER: return greater(operator, left, right);
+      case GREATER_EQUAL: return greaterEqual(operator, left, right);
+      case LESS: return less(operator, left, right);
+      case LESS_EQUAL: return lessEqual(operator, left, right);
+      case BANG_EQUAL: return notEqual(operator, left, right);
+      case EQUAL_EQUAL: return equal(operator, left, right);
+      /*
+      Bitwise Operations
+       */
+      case AMPERSAND: return bitAnd(operator, left, right);
+      case CARET: return bitXor(operator, left, right);
+      case PIPE: return bitOr(operator, left, right);
+      case LEFT_SHIFT: return leftShift(operator, left, right);
+      case RIGHT_SHIFT: return rightShift(operator, left, right);
+      case U_RIGHT_SHIFT: return unsignedRightShift(operator, left, right);
+      /*
+      Logical operations
+       */
+      case AND: return isTruthy(left) && isTruthy(right);
+      case OR: return isTruthy(left) || isTruthy(right);
+    }
+
+    return null;
+  }
+
+  static Object unary(Token operator, Object right) {
+    switch (operator.type) {
+      case BANG:
+        return !isTruthy(right);
+      case MINUS:
+        return negate(operator, right);
+      case TILDE:
+        return bitNot(operator, right);
+    }
+
+    return null;
+  }
+
+  /*
+  Number Operations. Integer operands produce an integer, any double
+  operand promotes the operation to double.
+   */
+  static Object add(Token operator, Object left, Object right) {
+    if (left instanceof ArkString || right instanceof ArkString) {
+      return ArkString.concat(left, right);
+    }
+    if (left instanceof Integer && right instanceof Integer) {
+      return (int)left + (int)right;
+    }
+    checkNumberOperands(operator, left, right);
+    return ((Number)left).doubleValue() + ((Number)right).doubleValue();
+  }
+
+  static Object subtract(Token operator, Object left, Object right) {
+    if (left instanceof Integer && right instanceof Integer) {
+      return (int)left - (int)right;
+    }
+    checkNumberOperands(operator, left, right);
+    return ((Number)left).doubleValue() - ((Number)right).doubleValue();
+  }
+
+  static Object multiply(Token operator, Object left, Object right) {
+    if (left instanceof Integer && right instanceof Integer) {
+      return (int)left * (int)right;
+    }
+    checkNumberOperands(operator, left, right);
+    return ((Number)left).doubleValue() * ((Number)right).doubleValue();
+  }
+
+  static Object divide(Token operator, Object left, Object right) {
+    if (left instanceof Integer && right instanceof Integer) {
+      return (int)left / (int)right;
+    }
+    checkNumberOperands(operator, left, right);
+    return ((Number)left).doubleValue() / ((Number)right).doubleValue();
+  }
+
+  static Object modulo(Token operator, Object left, Object right) {
+    if (left instanceof Integer && right instanceof Integer) {
+      return (int)left % (int)right;
+    }
+    checkNumberOperands(operator, left, right);
+    return ((Number)left).doubleValue() % ((Number)right).doubleValue();
+  }
+
+  static Object power(Token operator, Object left, Object right) {
+    if (left instanceof Integer && right instanceof Integer) {
+      return (int)Math.pow((int)left, (int)right);
+    }
+    checkNumberOperands(operator, left, right);
+    return Math.pow(((Number)left).doubleValue(), ((Number)right).doubleValue());
+  }
+
+  static Object greater(Token operator, Object left, Object right) {
+    if (left instanceof Integer && right instanceof Integer) {
+      return (int)left > (int)right;
+    }
+    checkNumberOperands(operator, left, right);
+    return ((Number)left).doubleValue() > ((Number)right).doubleValue();
+  }
+
+  static Object greaterEqual(Token operator, Object left, Object right) {
+    if (left instanceof Integer && right instanceof Integer) {
+      return (int)left >= (int)right;
+    }
+    checkNumberOperands(operator, left, right);
+    return ((Number)left).doubleValue() >= ((Number)right).doubleValue();
+  }
+
+  static Object less(Token operator, Object left, Object right) {
+    if (left instanceof Integer && right instanceof Integer) {
+      return (int)left < (int)right;
+    }
+    checkNumberOperands(operator, left, right);
+    return ((Number)left).doubleValue() < ((Number)right).doubleValue();
+  }
+
+  static Object lessEqual(Token operator, Object left, Object right) {
+    if (left instanceof Integer && right instanceof Integer) {
+      return (int)left <= (int)right;
+    }
+    checkNumberOperands(operator, left, right);
+    return ((Number)left).doubleValue() <= ((Number)right).doubleValue();
+  }
+
+  static Object equal(Token operator, Object left, Object right) {
+    if (left instanceof Integer && right instanceof Integer) {
+      return (int)left == (int)right;
+    }
+    if (left instanceof ArkString || right instanceof ArkString) {
+      return left.toString().equals(right.toString());
+    }
+    if (left instanceof Character || right instanceof Character) {
+      return left.toString().equals(right.toString());
+    }
+    checkNumberOperands(operator, left, right);
+    return ((Number)left).doubleValue() == ((Number)right).doubleValue();
+  }
+
+  static Object notEqual(Token operator, Object left, Object right) {
+    return !(Boolean)equal(operator, left, right);
+  }
+
+  static Object negate(Token operator, Object right) {
+    checkNumberOperand(operator, right);
+    if (right instanceof Integer) {
+      return -(Integer)right;
+    } else {
+      return -(Double)right;
+    }
+  }
+
+  /*
+  Bitwise Operations
+   */
+  static Object bitAnd(Token operator, Object left, Object right) {
+    checkIntegerOperands(operator, left, right);
+    return (int)left & (int)right;
+  }
+
+  static Object bitXor(Token operator, Object left, Object right) {
+    checkIntegerOperands(operator, left, right);
+    return (int)left ^ (int)right;
+  }
+
+  static Object bitOr(Token operator, Object left, Object right) {
+    checkIntegerOperands(operator, left, right);
+    return (int)left | (int)right;
+  }
+
+  static Object leftShift(Token operator, Object left, Object right) {
+    checkIntegerOperands(operator, left, right);
+    return (int)left << (int)right;
+  }
+
+  static Object rightShift(Token operator, Object left, Object right) {
+    checkIntegerOperands(operator, left, right);
+    return (int)left >> (int)right;
+  }
+
+  static Object unsignedRightShift(Token operator, Object left, Object right) {
+    checkIntegerOperands(operator, left, right);
+    return (int)left >>> (int)right;
+  }
+
+  static Object bitNot(Token operator, Object right) {
+    checkIntegerOperand(operator, right);
+    return ~(int)right;
+  }
+
+  /*
+  Collections
+   */
+  static Object indexGet(Token token, Object indexee, Object index) {
+    if (!(indexee instanceof ArkIndexable)) {
+      Ark.error(token, "Can only index collection types.");
+      return null;
+    }
+    return ((ArkIndexable) indexee).get(token, index);
+  }
+
+  static Object indexSet(Token token, Object indexee, Object index, Object value) {
+    if (!(indexee instanceof ArkIndexable)) {
+      Ark.error(token, "Can only index collection types.");
+      return null;
+    }
+    return ((ArkIndexable) indexee).set(token, index, value);
+  }
+
+  /**
+   * Builds a dict from its entries laid out as key, value, key, value...
+   */
+  static Object dict(Token token, Object[] entries) {
+    ArkDict dict = new ArkDict(entries.length / 2);
+    for (int i = 0; i < entries.length; i += 2) {
+      dict.set(token, entries[i], entries[i + 1]);
+    }
+    return dict;
+  }
+
+  static Object range(Token token, Object lower, Object upper, boolean closed) {
+    if (!(lower instanceof Integer) || !(upper instanceof Integer)) {
+      Ark.error(token,
+          "Lower & Upper bounds of range expression must be integers.");
+      return null;
+    }
+
+    int from = (int)lower, to = (int)upper;
+    if (closed && to < from) {
+      // a closed range always holds its upper bound
+      return ArkArray.range(to, 1);
+    }
+    long size = (long)to - from + (closed ? 1 : 0);
+    if (size > Integer.MAX_VALUE) {
+      throw new RuntimeError(token, "Range is too large.");
+    }
+    return ArkArray.range(from, (int)Math.max(0, size));
+  }
+
+  /*
+  Calls
+   */
+  static ArkCallable checkCallable(Token token, Object target) {
+    if (!(target instanceof ArkCallable)) {
+      throw new RuntimeError(token, "Invalid operation target.");
+    }
+    return (ArkCallable) target;
+  }
+
+  static void checkArity(Token token, ArkCallable callable, int count) {
+    if (!callable.variadic() && count != callable.arity()) {
+      throw new RuntimeError(token, "Expected " +
+          callable.arity() +
+          " args but got " +
+          count + ".");
+    }
+  }
+
+  /*
+  Operand helpers
+  */
+  static boolean isTruthy(Object object) {
+    if (object == null) return false;
+    if (object instanceof Boolean) return (Boolean)object;
+    if (object instanceof Number) return !(object).equals(0);
+    return true;
+  }
+
+  private static void checkNumberOperand(Token operator, Object op) {
+    if (!(op instanceof Number)) {
+      throw new RuntimeError(operator, "Operands must be numeric.");
+    }
+  }
+
+  private static void checkNumberOperands(Token operator, Object op1, Object op2) {
+    if (!(op1 instanceof Number) || !(op2 instanceof Number)) {
+      throw new RuntimeError(operator, "Operands must be numeric.");
+    }
+  }
+
+  private static void checkIntegerOperand(Token operator, Object op1) {
+    if (!(op1 instanceof Integer)) {
+      throw new RuntimeError(operator, "Operand must be an integer.");
+    }
+  }
+
+  private static void checkIntegerOperands(Token operator, Object op1, Object op2) {
+    if (!(op1 instanceof Integer) || !(op2 instanceof Integer)) {
+      throw new RuntimeError(operator, "Operands must be integers.");
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package org.arklang.lang;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Data-parallel map, filter and reduce over the common ForkJoinPool.
+ *
+ * The items are split into contiguous chunks, each run with an interpreter
+ * forked from the caller's so that every worker thread has frames of its
+ * own. Results are assembled in item order. Errors are reported at the
+ * token of the pmap, pfilter or preduce call.
+ */
+final class Parallel {
+
+  private Parallel() {}
+
+  private interface Body {
+    void run(Interpreter interpreter, int from, int to);
+  }
+
+  static ArkArray map(Interpreter interpreter, Token token, Object items, Object lambda) {
+    Object[] source = toArray(token, items);
+    ArkCallable callable = checkLambda(token, lambda, 1);
+    Object[] results = new Object[source.length];
+    run(interpreter, callable, source.length, (worker, from, to) -> {
+      for (int i = from; i < to; ++i) {
+        results[i] = call(worker, token, callable, source[i]);
+      }
+    });
+    return new ArkArray(results);
+  }
+
+  static ArkArray filter(Interpreter interpreter, Token token, Object items, Object lambda) {
+    Object[] source = toArray(token, items);
+    ArkCallable callable = checkLambda(token, lambda, 1);
+    boolean[] keep = new boolean[source.length];
+    run(interpreter, callable, source.length, (worker, from, to) -> {
+      for (int i = from; i < to; ++i) {
+        keep[i] = Operators.isTruthy(call(worker, token, callable, source[i]));
+      }
+    });
+
+    List<Object> results = new ArrayList<>();
+    for (int i = 0; i < source.length; ++i) {
+      if (keep[i]) results.add(source[i]);
+    }
+    return new ArkArray(results);
+  }
+
+  /**
+   * Folds the items into {@code initial} with {@code lambda}, which must be
+   * associative as chunks are folded separately and then combined.
+   */
+  static Object reduce(Interpreter interpreter, Token token, Object items, Object lambda,
+                       Object initial) {
+    Object[] source = toArray(token, items);
+    ArkCallable callable = checkLambda(token, lambda, 2);
+    if (source.length == 0) {
+      return initial;
+    }
+    if (!parallel(source.length)) {
+      return fold(interpreter, token, callable, initial, source, 0, source.length);
+    }
+
+    int chunk = chunkSize(source.length);
+    Object partial = ForkJoinPool.commonPool().invoke(new RecursiveTask<Object>() {
+      @Override
+      protected Object compute() {
+        return reduce(interpreter, token, callable, source, 0, source.length, chunk);
+      }
+    });
+    return call(interpreter, token, callable, initial, partial);
+  }
+
+  private static Object reduce(Interpreter interpreter, Token token, ArkCallable callable,
+                               Object[] source, int from, int to, int chunk) {
+    if (to - from <= chunk) {
+      return fold(interpreter.fork(), token, callable, source[from], source, from + 1, to);
+    }
+    int middle = (from + to) >>> 1;
+    RecursiveTask<Object> left = new RecursiveTask<Object>() {
+      @Override
+      protected Object compute() {
+        return reduce(interpreter, token, callable, source, from, middle, chunk);
+      }
+    };
+    left.fork();
+    Object right = reduce(interpreter, token, callable, source, middle, to, chunk);
+    return call(interpreter.fork(), token, callable, left.join(), right);
+  }
+
+  private static Object fold(Interpreter interpreter, Token token, ArkCallable callable,
+                             Object value, Object[] source, int from, int to) {
+    for (int i = from; i < to; ++i) {
+      value = call(interpreter, token, callable, value, source[i]);
+    }
+    return value;
+  }
+
+  private static void run(Interpreter interpreter, ArkCallable callable, int size, Body body) {
+    if (!parallel(size)) {
+      body.run(interpreter, 0, size);
+      return;
+    }
+    int chunk = chunkSize(size);
+    ForkJoinPool.commonPool().invoke(new Chunk(interpreter, body, 0, size, chunk));
+  }
+
+  private static class Chunk extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Interpreter interpreter;
+    private final Body body;
+    private final int from;
+    private final int to;
+    private final int chunk;
+
+    Chunk(Interpreter interpreter, Body body, int from, int to, int chunk) {
+      this.interpreter = interpreter;
+      this.body = body;
+      this.from = from;
+      this.to = to;
+      this.chunk = chunk;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= chunk) {
+        body.run(interpreter.fork(), from, to);
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(new Chunk(interpreter, body, from, middle, chunk),
+          new Chunk(interpreter, body, middle, to, chunk));
+    }
+  }
+
+  /*
+  Below two items per worker, forking an interpreter and a task per chunk
+  costs more than running the lambda on the calling thread.
+   */
+  private static boolean parallel(int size) {
+    return size >= 2 * ForkJoinPool.getCommonPoolParallelism();
+  }
+
+  /*
+  A few chunks per worker so that uneven items still balance.
+   */
+  private static int chunkSize(int size) {
+    int chunks = ForkJoinPool.getCommonPoolParallelism() * 4;
+    return Math.max(1, (size + chunks - 1) / chunks);
+  }
+
+  private static Object call(Interpreter interpreter, Token token, ArkCallable callable,
+                             Object... arguments) {
+    return callable.call(interpreter, token, new ArrayList<>(Arrays.asList(arguments)));
+  }
+
+  private static ArkCallable checkLambda(Token token, Object lambda, int arity) {
+    if (!(lambda instanceof ArkCallable)) {
+      throw new RuntimeError(token, "Expected a lambda to apply.");
+    }
+    ArkCallable callable = (ArkCallable) lambda;
+    Operators.checkArity(token, callable, arity);
+    return callable;
+  }
+
+  private static Object[] toArray(Token token, Object items) {
+    if (!(items instanceof ArkEnumerable)) {
+      throw new RuntimeError(token, "Parallel target must be enumerable.");
+    }
+    List<Object> values = new ArrayList<>();
+    for (Object item : (ArkEnumerable<?>) items) {
+      values.add(item);
+    }
+    return values.toArray();
+  }
+}
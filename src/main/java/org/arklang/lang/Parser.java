@@ -9,11 +9,21 @@ import static org.arklang.lang.TokenType.*;
 public class Parser {
 
   private static class ParseError extends RuntimeException {}
-  private final List<Token> tokens;
+  private final TokenBuffer tokens;
+  private final boolean lazy;
   private int current = 0;
 
-  Parser(List<Token> tokens) {
+  Parser(TokenBuffer tokens) {
+    this(tokens, false);
+  }
+
+  /**
+   * A lazy parser only matches the braces of a lambda body, leaving its
+   * statements to be parsed on the first call. See {@link LazyBody}.
+   */
+  Parser(TokenBuffer tokens, boolean lazy) {
     this.tokens = tokens;
+    this.lazy = lazy;
   }
 
   List<Stmt> parse() {
@@ -30,6 +40,36 @@ public class Parser {
     return expressions;
   }
 
+  /**
+   * Parses the next top-level declaration, for running a script one
+   * declaration at a time. Returns null at the end, or after reporting a
+   * syntax error. The tokens of earlier declarations are released, but
+   * for the last, which the parser may look back at.
+   */
+  Stmt next() {
+    tokens.release(current - 1);
+    if (isAtEnd()) return null;
+    try {
+      return declaration();
+    } catch (ParseError e) {
+      return null;
+    }
+  }
+
+  /**
+   * Parses the body of a lambda left by a lazy parse, from its left brace.
+   * Returns null after reporting a syntax error.
+   */
+  List<Stmt> lambdaBody(int brace) {
+    current = brace;
+    try {
+      consume(LBRACE, "Expect '{' before lambda body.");
+      return block();
+    } catch (ParseError e) {
+      return null;
+    }
+  }
+
   private Stmt declaration() {
     if (match(LET)) return letDeclaration();
     if (match(FOR)) return forDeclaration();
@@ -76,7 +116,7 @@ public class Parser {
   }
 
   private Expr ternary() {
-    Expr expr = grouping();
+    Expr expr = pipeline();
 
     if (match(QUESTION_MARK)) {
       Expr expr1 = expression();
@@ -88,6 +128,26 @@ public class Parser {
     return expr;
   }
 
+  private Expr pipeline() {
+    Expr expr = grouping();
+
+    // A stage (f a b) calls f with the item before a and b, so an operation
+    // stage is split into its target and arguments rather than evaluated.
+    while (match(RIGHT_ARROW)) {
+      Token token = previous();
+      boolean filter = match(QUESTION_MARK);
+      Expr stage = grouping();
+      List<Expr> arguments = new ArrayList<>();
+      if (stage instanceof Expr.Operation) {
+        arguments = ((Expr.Operation) stage).arguments;
+        stage = ((Expr.Operation) stage).target;
+      }
+      expr = new Expr.Pipe(expr, token, stage, arguments, filter);
+    }
+
+    return expr;
+  }
+
   private Expr grouping() {
     if (match(LPAREN)) {
       Expr expr = expression();
@@ -96,8 +156,7 @@ public class Parser {
     }
 
     // Binary operations are only valid within group expressions
-    Token prev = previous();
-    if (prev != null && prev.type == LPAREN) {
+    if (previousIs(LPAREN)) {
       return binary();
     } else {
       return unary();
@@ -144,9 +203,9 @@ public class Parser {
       }
     }
 
-    Token prev = previous();
+    boolean grouped = previousIs(LPAREN);
     Expr expr = primary();
-    if (prev != null && expr instanceof Expr.Variable && prev.type == LPAREN) {
+    if (grouped && expr instanceof Expr.Variable) {
       return new Expr.Operation(((Expr.Variable) expr).name, expr, arguments());
     } else if (match(LBRACKET)) {
       expr = new Expr.IndexGet(expr, previous(), expression());
@@ -181,13 +240,18 @@ public class Parser {
     List<Token> parameters = new ArrayList<>();
     if (check(IDENTIFIER)) {
       do {
-        parameters.add(consume(IDENTIFIER, "Expect parameter name."));
+        consume(IDENTIFIER, "Expect parameter name.");
+        parameters.add(previous());
       } while (!check(RIGHT_ARROW));
     }
 
     consume(RIGHT_ARROW, "Expect '->' after lambda params.");
 
-    if (check(LBRACE)) {
+    if (check(LBRACE) && lazy) {
+      LazyBody body = new LazyBody(tokens, current);
+      skipBlock();
+      return new Expr.Lambda(name, parameters, body);
+    } else if (check(LBRACE)) {
       match(LBRACE);
       return new Expr.Lambda(name, parameters, block());
     } else {
@@ -205,9 +269,9 @@ public class Parser {
 
     if (match(INT)) {
       // Check for range operator
-      Expr value = new Expr.Literal(previous().literal);
+      Expr value = new Expr.Literal(tokens.literal(current - 1));
       if (match(DOT_DOT, DOT_DOT_DOT)) {
-        boolean closed = previous().type == DOT_DOT_DOT;
+        boolean closed = previousIs(DOT_DOT_DOT);
         return new Expr.Range(value, expression(), previous(),
             closed);
       } else {
@@ -220,7 +284,7 @@ public class Parser {
     }
 
     if (match(DOUBLE)) {
-      return new Expr.Literal(previous().literal);
+      return new Expr.Literal(tokens.literal(current - 1));
     }
 
     if (match(STRING)) {
@@ -235,6 +299,10 @@ public class Parser {
       return array();
     }
 
+    if (match(DICT)) {
+      return dict();
+    }
+
     throw error(peek(), "Expect expression.");
   }
 
@@ -251,6 +319,23 @@ public class Parser {
     return new Expr.Array(bracket, items);
   }
 
+  private Expr dict() {
+    Token token = previous();
+    consume(LBRACE, "Expect '{' after dict.");
+
+    List<Expr> keys = new ArrayList<>();
+    List<Expr> values = new ArrayList<>();
+    while (!match(RBRACE)) {
+      do {
+        keys.add(expression());
+        consume(COLON, "Expect ':' after dict key.");
+        values.add(expression());
+      } while (match(COMMA));
+    }
+
+    return new Expr.Dict(token, keys, values);
+  }
+
   private Expr string() {
     /* Inspect string for interpolation operations */
 
@@ -264,7 +349,8 @@ public class Parser {
     List<Expr> initializers = new ArrayList<>();
 
     do {
-      Token name = consume(IDENTIFIER, "Expect variable name.");
+      consume(IDENTIFIER, "Expect variable name.");
+      Token name = previous();
       Expr initializer = null;
       if (match(EQUAL)) {
         initializer = expression();
@@ -332,25 +418,46 @@ public class Parser {
     return statements;
   }
 
+  /*
+  Steps over a block, left brace to matching right brace, without parsing
+  what is in it.
+   */
+  private void skipBlock() {
+    int depth = 0;
+    do {
+      if (isAtEnd()) throw error(peek(), "Expect '}' after block.");
+      if (check(LBRACE)) {
+        ++depth;
+      } else if (check(RBRACE)) {
+        --depth;
+      }
+      advance();
+    } while (depth > 0);
+  }
+
   /*
   Helper methods for Parser.
    */
 
   private boolean isAtEnd() {
-    return peek().type == EOF;
+    return tokens.type(current) == EOF;
   }
 
+  /*
+  The parser looks at token types in the buffer and only makes a Token
+  when one is kept in the tree or reported in an error.
+   */
   private Token peek() {
-    return tokens.get(current);
-  }
-
-  private Token peekNext() {
-    return tokens.get(current + 1);
+    return tokens.token(current);
   }
 
   private Token previous() {
     if (current == 0) return null;
-    return tokens.get(current - 1);
+    return tokens.token(current - 1);
+  }
+
+  private boolean previousIs(TokenType tokenType) {
+    return current > 0 && tokens.type(current - 1) == tokenType;
   }
 
   private boolean match(TokenType... types) {
@@ -366,21 +473,23 @@ public class Parser {
 
   private boolean check(TokenType tokenType) {
     if (isAtEnd()) return false;
-    return peek().type == tokenType;
+    return tokens.type(current) == tokenType;
   }
 
   private boolean checkNext(TokenType tokenType) {
     if (isAtEnd()) return false;
-    return peekNext().type == tokenType;
+    return tokens.type(current + 1) == tokenType;
   }
 
-  private Token advance() {
+  private void advance() {
     if (!isAtEnd()) current++;
-    return previous();
   }
 
-  private Token consume(TokenType type, String message) {
-    if (check(type)) return advance();
+  private void consume(TokenType type, String message) {
+    if (check(type)) {
+      advance();
+      return;
+    }
 
     throw error(peek(), message);
   }
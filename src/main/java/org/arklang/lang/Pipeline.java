@@ -0,0 +1,86 @@
+package org.arklang.lang;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs a `->` pipeline. All stages of a chain are fused into one pass over
+ * the source: each item is pulled from the source and taken through every
+ * stage before the next is read, and only the final result is collected.
+ *
+ * A map stage {@code -> (f a b)} replaces the item with {@code (f item a b)};
+ * a filter stage {@code ->? (f a b)} keeps the item when that call is truthy.
+ */
+final class Pipeline {
+
+  private Pipeline() {}
+
+  static final class Stage {
+    final Token token;
+    final ArkCallable callable;
+    final boolean filter;
+
+    // Arguments of every call the stage makes, the item first. Lambdas copy
+    // them into their own frames, so one array serves all the items; other
+    // callables may keep their list and get one of their own.
+    private final Object[] arguments;
+
+    Stage(Token token, Object callable, Object[] arguments, boolean filter) {
+      this.token = token;
+      this.callable = Operators.checkCallable(token, callable);
+      this.filter = filter;
+      Operators.checkArity(token, this.callable, arguments.length + 1);
+      this.arguments = new Object[arguments.length + 1];
+      System.arraycopy(arguments, 0, this.arguments, 1, arguments.length);
+    }
+
+    Object apply(Interpreter interpreter, Object item) {
+      arguments[0] = item;
+      if (callable instanceof Lambda) {
+        return ((Lambda) callable).invoke(interpreter, arguments);
+      }
+      if (callable instanceof ClosureLambda) {
+        return ((ClosureLambda) callable).invoke(arguments);
+      }
+      return callable.call(interpreter, token, new ArrayList<>(Arrays.asList(arguments)));
+    }
+  }
+
+  /**
+   * The pipes of a chain in source order, ending with {@code last}. The
+   * source of the chain is the source of the first.
+   */
+  static List<Expr.Pipe> chain(Expr.Pipe last) {
+    List<Expr.Pipe> pipes = new ArrayList<>();
+    Expr expr = last;
+    while (expr instanceof Expr.Pipe) {
+      pipes.add((Expr.Pipe) expr);
+      expr = ((Expr.Pipe) expr).source;
+    }
+    Collections.reverse(pipes);
+    return pipes;
+  }
+
+  static ArkArray run(Interpreter interpreter, Object source, Stage[] stages) {
+    if (!(source instanceof ArkEnumerable)) {
+      throw new RuntimeError(stages[0].token, "Pipeline source must be enumerable.");
+    }
+
+    ArkArray result = new ArkArray(new Object[0]);
+    items:
+    for (Object item : (ArkEnumerable<?>) source) {
+      for (Stage stage : stages) {
+        Object value = stage.apply(interpreter, item);
+        if (!stage.filter) {
+          item = value;
+        } else if (!Operators.isTruthy(value)) {
+          continue items;
+        }
+      }
+      result.add(item);
+    }
+    return result;
+  }
+}
@@ -10,13 +10,49 @@ import java.util.Stack;
  */
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
-  private final Interpreter interpreter;
-  private final Stack<HashMap<String, Boolean>> scopes = new Stack<>();
+  private final Stack<Scope> scopes = new Stack<>();
 
+  /**
+   * Names declared in a block or lambda, and the frame slot of each.
+   */
+  private static class Scope {
+    final Map<String, Boolean> defined = new HashMap<>();
+    final Map<String, Integer> slots = new HashMap<>();
+
+    Scope copy() {
+      Scope scope = new Scope();
+      scope.defined.putAll(defined);
+      scope.slots.putAll(slots);
+      return scope;
+    }
+  }
+
+  private final Globals names;
   private boolean inLoop = false;
+  private int lambdaDepth = 0;
+
+  Resolver() {
+    this(Globals.DEFAULT);
+  }
+
+  /**
+   * A resolver binding global names to cells of the given table, for
+   * running in environments made from it.
+   */
+  Resolver(Globals names) {
+    this.names = names;
+  }
 
-  public Resolver(Interpreter interpreter) {
-    this.interpreter = interpreter;
+  /*
+  A resolver in the state of another, for a lambda body resolved later.
+   */
+  private Resolver(Resolver state) {
+    names = state.names;
+    for (Scope scope : state.scopes) {
+      scopes.push(scope.copy());
+    }
+    inLoop = state.inLoop;
+    lambdaDepth = state.lambdaDepth;
   }
 
   void resolve(List<Stmt> stmts) {
@@ -34,36 +70,58 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   }
 
   private void beginScope() {
-    scopes.push(new HashMap<>());
+    scopes.push(new Scope());
   }
 
-  private void endScope() {
-    scopes.pop();
+  /**
+   * Closes the innermost scope and returns its frame size.
+   */
+  private int endScope() {
+    return scopes.pop().slots.size();
   }
 
-  private void declare(Token name) {
-    if (scopes.isEmpty()) return;
+  /**
+   * Declares a name in the innermost scope and returns its frame slot. At
+   * the top level that is the name's global cell.
+   */
+  private int declare(Token name) {
+    if (scopes.isEmpty()) return names.index(name.lexeme);
 
-    Map<String, Boolean> scope = scopes.peek();
-    if (scope.containsKey(name.lexeme)) {
+    Scope scope = scopes.peek();
+    if (scope.defined.containsKey(name.lexeme)) {
       Ark.error(name, "Variable with this name already declared in this scope.");
+    } else {
+      scope.slots.put(name.lexeme, scope.slots.size());
     }
 
-    scope.put(name.lexeme, false);
+    scope.defined.put(name.lexeme, false);
+    return scope.slots.get(name.lexeme);
   }
 
   private void define(Token name) {
     if (scopes.isEmpty()) return;
-    scopes.peek().put(name.lexeme, true);
+    scopes.peek().defined.put(name.lexeme, true);
   }
 
-  private void resolveLocal(Expr expr, Token name) {
+  /**
+   * Distance from the innermost scope to the one declaring the name, or -1
+   * when the name is global.
+   */
+  private int depthOf(Token name) {
     for (int i = scopes.size() - 1; i >= 0; --i) {
-      if (scopes.get(i).containsKey(name.lexeme)) {
-        interpreter.resolve(expr, scopes.size() - 1 - i);
-        return;
+      if (scopes.get(i).slots.containsKey(name.lexeme)) {
+        return scopes.size() - 1 - i;
       }
     }
+    return -1;
+  }
+
+  /**
+   * Frame slot of the name at the given depth, or its global cell.
+   */
+  private int slotOf(int depth, Token name) {
+    if (depth < 0) return names.index(name.lexeme);
+    return scopes.get(scopes.size() - 1 - depth).slots.get(name.lexeme);
   }
 
   /*
@@ -100,19 +158,21 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitVariableExpr(Expr.Variable expr) {
     if (!scopes.isEmpty() &&
-        scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
+        scopes.peek().defined.get(expr.name.lexeme) == Boolean.FALSE) {
       Ark.error(expr.name,
           "Cannot read local variable in its own initializer.");
     }
 
-    resolveLocal(expr, expr.name);
+    expr.depth = depthOf(expr.name);
+    expr.slot = slotOf(expr.depth, expr.name);
     return null;
   }
 
   @Override
   public Void visitAssignExpr(Expr.Assign expr) {
     resolve(expr.value);
-    resolveLocal(expr, expr.name);
+    expr.depth = depthOf(expr.name);
+    expr.slot = slotOf(expr.depth, expr.name);
     return null;
   }
 
@@ -127,10 +187,22 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitLambdaExpr(Expr.Lambda expr) {
     if (expr.name != null) {
-      declare(expr.name);
+      expr.slot = declare(expr.name);
       define(expr.name);
     }
 
+    if (expr.body instanceof LazyBody && !((LazyBody) expr.body).isParsed()) {
+      ((LazyBody) expr.body).defer(expr, new Resolver(this));
+    } else {
+      resolveBody(expr, expr.body);
+    }
+    return null;
+  }
+
+  /**
+   * Resolves the parameters and body of a lambda in a scope of their own.
+   */
+  void resolveBody(Expr.Lambda expr, List<Stmt> body) {
     beginScope();
     if (expr.parameters != null) {
       for (Token param : expr.parameters) {
@@ -138,9 +210,10 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         define(param);
       }
     }
-    resolve(expr.body);
-    endScope();
-    return null;
+    ++lambdaDepth;
+    resolve(body);
+    --lambdaDepth;
+    expr.frameSize = endScope();
   }
 
   @Override
@@ -151,6 +224,25 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     return null;
   }
 
+  @Override
+  public Void visitDictExpr(Expr.Dict expr) {
+    for (int i = 0; i < expr.keys.size(); ++i) {
+      resolve(expr.keys.get(i));
+      resolve(expr.values.get(i));
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitPipeExpr(Expr.Pipe expr) {
+    resolve(expr.source);
+    resolve(expr.stage);
+    for (Expr argument : expr.arguments) {
+      resolve(argument);
+    }
+    return null;
+  }
+
   @Override
   public Void visitStrExpr(Expr.Str expr) {
     return null;
@@ -187,7 +279,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   public Void visitBlockStmt(Stmt.Block stmt) {
     beginScope();
     resolve(stmt.statements);
-    endScope();
+    stmt.frameSize = endScope();
     return null;
   }
 
@@ -221,11 +313,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   public Void visitForInStmt(Stmt.ForIn stmt) {
     boolean previousInLoop = inLoop;
 
-    declare(stmt.itemIterator);
+    stmt.itemSlot = declare(stmt.itemIterator);
     define(stmt.itemIterator);
 
     if (stmt.indexIterator != null) {
-      declare(stmt.indexIterator);
+      stmt.indexSlot = declare(stmt.indexIterator);
       define(stmt.indexIterator);
     }
 
@@ -254,8 +346,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
   @Override
   public Void visitLetStmt(Stmt.Let stmt) {
+    stmt.slots = new int[stmt.names.size()];
     for (int i = 0; i < stmt.names.size(); ++i) {
-      declare(stmt.names.get(i));
+      stmt.slots[i] = declare(stmt.names.get(i));
       if (stmt.initializers.get(i) != null) {
         resolve(stmt.initializers.get(i));
       }
@@ -268,6 +361,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitSendStmt(Stmt.Send stmt) {
     resolve(stmt.value);
+    // a send leaves the lambda, so a call it sends is always in tail position
+    stmt.tail = lambdaDepth > 0 && stmt.value instanceof Expr.Operation;
     return null;
   }
 }
@@ -7,4 +7,11 @@ public class RuntimeError extends RuntimeException {
     super(message);
     this.token = token;
   }
+
+  /**
+   * Source line the error was raised at, or -1 when unknown.
+   */
+  public int line() {
+    return token == null ? -1 : token.line;
+  }
 }
@@ -1,17 +1,15 @@
 package org.arklang.lang;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import static org.arklang.lang.TokenType.*;
 
 public class Scanner {
 
-  private final String source;
-  private final List<Token> tokens;
-  private final int length;
+  private final Source source;
+  private final TokenBuffer tokens;
+  private boolean ended = false;
   private int start;
   private int current;
   private int line;
@@ -46,26 +44,52 @@ public class Scanner {
   }
 
   Scanner(String inSource) {
+    this(Source.of(inSource));
+  }
+
+  Scanner(Source inSource) {
     source = inSource;
-    length = source.length();
-    tokens = new ArrayList<>();
+    tokens = new TokenBuffer(source, keywords);
     start = 0;
     current = 0;
     line = 1;
   }
 
-  public List<Token> scanTokens() {
-    while (!isAtEnd()) {
+  TokenBuffer scanTokens() {
+    while (scanNext());
+    return tokens;
+  }
+
+  /**
+   * Tokens that are scanned as the parser reaches them rather than all at
+   * once, for running a script while it is still being read.
+   */
+  TokenBuffer streamTokens() {
+    tokens.streamFrom(this);
+    return tokens;
+  }
+
+  /**
+   * Scans up to the next token, or to the EOF token at the end. Returns
+   * false once the EOF token has been added.
+   */
+  boolean scanNext() {
+    if (ended) return false;
+    int size = tokens.size();
+    while (tokens.size() == size) {
+      if (isAtEnd()) {
+        tokens.add(EOF, current, current, line);
+        ended = true;
+        break;
+      }
       start = current;
       scanToken();
     }
-
-    tokens.add(new Token(EOF, "", null, line));
-    return tokens;
+    return true;
   }
 
   private boolean isAtEnd() {
-    return current >= length;
+    return !source.has(current);
   }
 
   private void scanToken() {
@@ -149,13 +173,12 @@ public class Scanner {
     return source.charAt(current - 1);
   }
 
+  /*
+  Records the token's extent only; its text and literal value are read
+  from the source if the parser asks for them.
+   */
   private void addToken(TokenType type) {
-    addToken(type, null);
-  }
-
-  private void addToken(TokenType type, Object literal) {
-    String text = source.substring(start, current);
-    tokens.add(new Token(type, text, literal, line));
+    tokens.add(type, start, current, line);
   }
 
   private boolean match(char expected) {
@@ -171,7 +194,7 @@ public class Scanner {
   }
 
   private char peekNext() {
-    if (current + 1 >= source.length()) return '\0';
+    if (!source.has(current + 1)) return '\0';
     return source.charAt(current + 1);
   }
 
@@ -189,8 +212,7 @@ public class Scanner {
     // The closing ".
     advance();
 
-    String value = source.substring(start + 1, current - 1);
-    addToken(STRING, value);
+    addToken(STRING);
   }
 
   private void character() {
@@ -206,8 +228,7 @@ public class Scanner {
 
     // the closing '.
     advance();
-    Character ch = source.substring(start + 1, current - 1).toCharArray()[0];
-    addToken(CHAR, ch);
+    addToken(CHAR);
   }
 
   private void period() {
@@ -245,11 +266,7 @@ public class Scanner {
       while (isDigit(peek())) advance();
     }
 
-    if (fractional) {
-      addToken(DOUBLE, Double.parseDouble(source.substring(start, current)));
-    } else {
-      addToken(INT, Integer.parseInt(source.substring(start, current)));
-    }
+    addToken(fractional ? DOUBLE : INT);
   }
 
   private boolean isAlphaNumeric(char c) {
@@ -259,11 +276,6 @@ public class Scanner {
   private void identifier() {
     while (isAlphaNumeric(peek())) advance();
 
-    String text = source.substring(start, current);
-
-    TokenType type = keywords.get(text);
-    if (type == null) type = IDENTIFIER;
-    addToken(type);
-
+    addToken(tokens.intern(start, current));
   }
 }
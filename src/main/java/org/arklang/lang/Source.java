@@ -0,0 +1,147 @@
+package org.arklang.lang;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Text read by the {@link Scanner}, addressed by character offset from the
+ * start of the script.
+ *
+ * Besides a string, a source can be a memory-mapped file decoded a window
+ * at a time as the scanner reaches it. Text before the offset passed to
+ * {@link #release} may then be dropped, so only the part of the file still
+ * being scanned or parsed is held on the heap.
+ */
+abstract class Source {
+
+  /**
+   * Whether {@code index} is within the text, reading up to it if needed.
+   */
+  abstract boolean has(int index);
+
+  abstract char charAt(int index);
+
+  abstract String text(int start, int end);
+
+  /**
+   * Text before {@code index} will not be asked for again.
+   */
+  void release(int index) {}
+
+  static Source of(String text) {
+    return new StringSource(text);
+  }
+
+  /**
+   * Maps the file at {@code path}, decoding it with the platform charset as
+   * the file runner does for a whole script.
+   */
+  static Source map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Script too large to map: " + path);
+      }
+      return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  private static final class StringSource extends Source {
+    private final String text;
+
+    StringSource(String text) {
+      this.text = text;
+    }
+
+    @Override
+    boolean has(int index) {
+      return index < text.length();
+    }
+
+    @Override
+    char charAt(int index) {
+      return text.charAt(index);
+    }
+
+    @Override
+    String text(int start, int end) {
+      return text.substring(start, end);
+    }
+  }
+
+  /*
+  Characters from base to base + count are decoded into the window. When the
+  window fills up, released text is moved out of it before it is grown.
+   */
+  private static final class MappedSource extends Source {
+    private static final int WINDOW = 1 << 16;
+
+    private final ByteBuffer bytes;
+    private final CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private char[] window = new char[WINDOW];
+    private int base = 0;
+    private int count = 0;
+    private int released = 0;
+    private boolean decoded = false;
+
+    MappedSource(ByteBuffer bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    boolean has(int index) {
+      while (index >= base + count) {
+        if (decoded) return false;
+        decode();
+      }
+      return true;
+    }
+
+    @Override
+    char charAt(int index) {
+      return window[index - base];
+    }
+
+    @Override
+    String text(int start, int end) {
+      return new String(window, start - base, end - start);
+    }
+
+    @Override
+    void release(int index) {
+      released = Math.max(released, index);
+    }
+
+    private void decode() {
+      // make room well before the window is full, so a surrogate pair always fits
+      if (window.length - count < WINDOW / 4) {
+        int dropped = released - base;
+        if (dropped > window.length / 2) {
+          System.arraycopy(window, dropped, window, 0, count - dropped);
+          base += dropped;
+          count -= dropped;
+        } else {
+          window = Arrays.copyOf(window, window.length * 2);
+        }
+      }
+
+      CharBuffer out = CharBuffer.wrap(window, count, window.length - count);
+      CoderResult result = decoder.decode(bytes, out, true);
+      if (result.isUnderflow()) {
+        decoder.flush(out);
+        decoded = true;
+      }
+      count = out.position();
+    }
+  }
+}
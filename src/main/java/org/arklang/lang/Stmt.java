@@ -24,6 +24,7 @@ abstract class Stmt {
     }
 
     final List<Stmt> statements;
+    int frameSize;
   }
   static class Expression extends Stmt {
     Expression(Expr expression) {
@@ -82,6 +83,8 @@ abstract class Stmt {
     final Token indexIterator;
     final Expr enumerable;
     final Stmt body;
+    int itemSlot = -1;
+    int indexSlot = -1;
   }
   static class Print extends Stmt {
     Print(Expr expression) {
@@ -106,6 +109,7 @@ abstract class Stmt {
 
     final Token keyword;
     final Expr value;
+    boolean tail;
   }
   static class Let extends Stmt {
     Let(List<Token> names, List<Expr> initializers) {
@@ -119,6 +123,7 @@ abstract class Stmt {
 
     final List<Token> names;
     final List<Expr> initializers;
+    int[] slots;
   }
   static class Break extends Stmt {
     Break(Token keyword) {
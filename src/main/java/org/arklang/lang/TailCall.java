@@ -0,0 +1,15 @@
+package org.arklang.lang;
+
+/**
+ * Call in tail position, handed back to the calling lambda's trampoline
+ * instead of being made on top of the current Java stack frame.
+ */
+class TailCall {
+  final ArkCallable callee;
+  final Object[] arguments;
+
+  TailCall(ArkCallable callee, Object[] arguments) {
+    this.callee = callee;
+    this.arguments = arguments;
+  }
+}
@@ -0,0 +1,115 @@
+package org.arklang.lang;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs spawned lambdas as lightweight tasks.
+ *
+ * On a JDK with virtual threads each task gets one of its own; otherwise
+ * tasks share a work-stealing pool. A task that blocks on a channel or on
+ * another task tells the pool, which starts a spare worker in its place so
+ * that tasks waiting on each other cannot starve it.
+ */
+final class Tasks {
+
+  private Tasks() {}
+
+  private static final Executor executor = createExecutor();
+
+  /**
+   * Handle of a spawned lambda, awaited for the value it sends.
+   */
+  static final class Task {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private Object result;
+    private RuntimeError error;
+
+    /**
+     * The value the lambda sent, waiting for it to finish first. Anything
+     * the lambda threw is raised again here as a runtime error.
+     */
+    Object await() {
+      block(() -> done.getCount() == 0, done::await);
+      if (error != null) {
+        throw error;
+      }
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "<task>";
+    }
+  }
+
+  interface Wait {
+    void await() throws InterruptedException;
+  }
+
+  static Task spawn(Interpreter interpreter, Object lambda, List<Object> arguments) {
+    ArkCallable callable = Operators.checkCallable(null, lambda);
+    Operators.checkArity(null, callable, arguments.size());
+
+    Task task = new Task();
+    List<Object> copy = new ArrayList<>(arguments);
+    executor.execute(() -> {
+      try {
+        task.result = callable.call(interpreter.fork(), copy);
+      } catch (RuntimeError error) {
+        task.error = error;
+      } catch (StackOverflowError error) {
+        task.error = new RuntimeError(null, "Stack overflow in spawned task.");
+      } catch (Throwable error) {
+        task.error = new RuntimeError(null, "Spawned task failed: " + error + ".");
+      } finally {
+        task.done.countDown();
+      }
+    });
+    return task;
+  }
+
+  /**
+   * Blocks until {@code ready}, running {@code wait} to sleep in between.
+   * On a pool worker the pool is told so that it can make up for it.
+   */
+  static void block(BooleanSupplier ready, Wait wait) {
+    try {
+      ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+        @Override
+        public boolean block() throws InterruptedException {
+          wait.await();
+          return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+          return ready.getAsBoolean();
+        }
+      });
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeError(null, "Interrupted while waiting.");
+    }
+  }
+
+  /*
+  Executors.newVirtualThreadPerTaskExecutor is looked up reflectively as the
+  build targets JDKs that predate it.
+   */
+  private static Executor createExecutor() {
+    try {
+      Method factory = java.util.concurrent.Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor");
+      return (Executor) factory.invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+          ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+  }
+}
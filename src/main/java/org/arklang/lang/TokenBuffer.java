@@ -0,0 +1,261 @@
+package org.arklang.lang;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.arklang.lang.TokenType.*;
+
+/**
+ * Tokens of a source, stored as parallel arrays of type, start offset,
+ * length and line rather than as objects.
+ *
+ * A {@link Token} is only made when the parser keeps one in the tree or
+ * reports an error at it. Its lexeme is then a shared string: the text of
+ * a punctuation or operator token is the same every time, and names are
+ * interned in a table probed by their characters in the source, so a name
+ * seen again costs no allocation.
+ *
+ * When streamed, tokens are scanned as the parser reaches them, and those
+ * before a released index are dropped. Indices stay counted from the first
+ * token of the script.
+ */
+final class TokenBuffer {
+
+  private static final TokenType[] TYPES = TokenType.values();
+
+  /*
+  Text of the fixed tokens by type, filled in as they are first seen. The
+  text of a type never varies, so buffers can share it.
+   */
+  private static final String[] fixedLexemes = new String[TYPES.length];
+
+  private final Source source;
+  private byte[] types = new byte[256];
+  private int[] starts = new int[256];
+  private int[] lengths = new int[256];
+  private int[] lines = new int[256];
+  private int base = 0;
+  private int count = 0;
+  private Scanner scanner = null;
+
+  // Names: open addressed by hash, with the type of each (keyword or IDENTIFIER).
+  private String[] names = new String[64];
+  private TokenType[] nameTypes = new TokenType[64];
+  private int nameCount = 0;
+
+  private int materialized = -1;
+  private Token token;
+
+  TokenBuffer(Source source, Map<String, TokenType> keywords) {
+    this.source = source;
+    for (Map.Entry<String, TokenType> keyword : keywords.entrySet()) {
+      insert(keyword.getKey(), keyword.getValue());
+    }
+  }
+
+  void streamFrom(Scanner scanner) {
+    this.scanner = scanner;
+  }
+
+  void add(TokenType type, int start, int end, int line) {
+    if (count == types.length) {
+      int capacity = count * 2;
+      types = Arrays.copyOf(types, capacity);
+      starts = Arrays.copyOf(starts, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+      lines = Arrays.copyOf(lines, capacity);
+    }
+    types[count] = (byte) type.ordinal();
+    starts[count] = start;
+    lengths[count] = end - start;
+    lines[count] = line;
+    ++count;
+  }
+
+  /**
+   * The number of tokens scanned so far, released ones included.
+   */
+  int size() {
+    return base + count;
+  }
+
+  /**
+   * Drops the tokens before {@code i}, and lets the source drop their text.
+   */
+  void release(int i) {
+    int dropped = Math.min(i, size()) - base;
+    if (dropped <= 0) return;
+    count -= dropped;
+    System.arraycopy(types, dropped, types, 0, count);
+    System.arraycopy(starts, dropped, starts, 0, count);
+    System.arraycopy(lengths, dropped, lengths, 0, count);
+    System.arraycopy(lines, dropped, lines, 0, count);
+    base += dropped;
+    if (count > 0) source.release(starts[0]);
+  }
+
+  TokenType type(int i) {
+    if (i >= base + count) scan(i);
+    return TYPES[types[i - base]];
+  }
+
+  int line(int i) {
+    return lines[i - base];
+  }
+
+  /*
+  Has a streaming scanner append tokens until there is one at i.
+   */
+  private void scan(int i) {
+    while (i >= base + count && scanner != null) {
+      if (!scanner.scanNext()) break;
+    }
+  }
+
+  /**
+   * The token at {@code i}. Asking again for the last token made returns
+   * the same object.
+   */
+  Token token(int i) {
+    if (i != materialized) {
+      token = new Token(type(i), lexeme(i), literal(i), line(i));
+      materialized = i;
+    }
+    return token;
+  }
+
+  String lexeme(int i) {
+    TokenType type = type(i);
+    int start = starts[i - base], end = start + lengths[i - base];
+    if (start == end) {
+      return "";
+    }
+    if (isNameStart(source.charAt(start))) {
+      return names[find(start, end, hash(start, end))];
+    }
+    switch (type) {
+      case STRING: case CHAR: case INT: case DOUBLE:
+        return source.text(start, end);
+      default:
+        String fixed = fixedLexemes[type.ordinal()];
+        if (fixed == null) {
+          fixed = source.text(start, end);
+          fixedLexemes[type.ordinal()] = fixed;
+        }
+        return fixed;
+    }
+  }
+
+  /**
+   * Value of a string, character or number literal token, otherwise null.
+   * Keywords such as {@code int} share their type with literals.
+   */
+  Object literal(int i) {
+    TokenType type = type(i);
+    int start = starts[i - base], end = start + lengths[i - base];
+    if (start == end || isNameStart(source.charAt(start))) {
+      return null;
+    }
+    switch (type) {
+      case STRING:
+        return source.text(start + 1, end - 1);
+      case CHAR:
+        return source.charAt(start + 1);
+      case INT:
+        return parseInt(start, end);
+      case DOUBLE:
+        return Double.parseDouble(source.text(start, end));
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Interns the name between {@code start} and {@code end} of the source
+   * and returns its type: a keyword's own, or IDENTIFIER.
+   */
+  TokenType intern(int start, int end) {
+    int slot = find(start, end, hash(start, end));
+    if (slot >= 0) {
+      return nameTypes[slot];
+    }
+    insert(source.text(start, end), IDENTIFIER);
+    return IDENTIFIER;
+  }
+
+  /*
+  Returns the slot holding the name between start and end of the source,
+  or the complement of the free slot where it belongs.
+   */
+  private int find(int start, int end, int hash) {
+    int mask = names.length - 1;
+    int length = end - start;
+    for (int i = hash & mask; ; i = (i + 1) & mask) {
+      String name = names[i];
+      if (name == null) return ~i;
+      if (name.length() == length && name.hashCode() == hash && matches(name, start)) {
+        return i;
+      }
+    }
+  }
+
+  private boolean matches(String name, int start) {
+    for (int k = 0; k < name.length(); ++k) {
+      if (name.charAt(k) != source.charAt(start + k)) return false;
+    }
+    return true;
+  }
+
+  /*
+  Adds a name known not to be in the table.
+   */
+  private void insert(String name, TokenType type) {
+    if ((nameCount + 1) * 2 > names.length) {
+      String[] oldNames = names;
+      TokenType[] oldTypes = nameTypes;
+      names = new String[oldNames.length * 2];
+      nameTypes = new TokenType[names.length];
+      for (int i = 0; i < oldNames.length; ++i) {
+        if (oldNames[i] != null) place(oldNames[i], oldTypes[i]);
+      }
+    }
+    place(name, type);
+    ++nameCount;
+  }
+
+  private void place(String name, TokenType type) {
+    int mask = names.length - 1;
+    int i = name.hashCode() & mask;
+    while (names[i] != null) i = (i + 1) & mask;
+    names[i] = name;
+    nameTypes[i] = type;
+  }
+
+  /*
+  The same hash as String.hashCode of the text, so that it can be checked
+  against the cached hash of a table entry.
+   */
+  private int hash(int start, int end) {
+    int h = 0;
+    for (int i = start; i < end; ++i) {
+      h = 31 * h + source.charAt(i);
+    }
+    return h;
+  }
+
+  private Object parseInt(int start, int end) {
+    // up to 9 digits cannot overflow
+    if (end - start > 9) {
+      return Integer.parseInt(source.text(start, end));
+    }
+    int value = 0;
+    for (int i = start; i < end; ++i) {
+      value = value * 10 + (source.charAt(i) - '0');
+    }
+    return value;
+  }
+
+  private static boolean isNameStart(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+  }
+}
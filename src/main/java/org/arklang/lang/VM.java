@@ -0,0 +1,571 @@
+package org.arklang.lang;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Stack based virtual machine executing bytecode produced by the
+ * {@link Compiler}. An alternative execution engine to the tree-walking
+ * {@link Interpreter}, selected with {@code --engine=vm}.
+ *
+ * Every invocation gets its own frame, and borrows its operand stack from
+ * the region above its caller's, so a VM holds no per-call state besides
+ * its globals. Calls from one VM lambda to another run in the same
+ * interpreter loop rather than recursing on the Java stack.
+ *
+ * Globals are cells of an {@link Environment} over the shared
+ * {@link Globals} table, as in the other engines, so scripts and spawned
+ * tasks on several threads may read and define them at once.
+ */
+public class VM {
+
+  /**
+   * Returned by a script that ran to its end rather than sending.
+   */
+  static final Object COMPLETED = new Object();
+  private static final int STACK_SEGMENT = 1024;
+  private static final int MAX_CALLERS = 1 << 20;
+  private static final Object[] NO_CALLERS = new Object[0];
+  private static final long[] NO_RETURNS = new long[0];
+
+  /**
+   * Iteration state of a for-in loop, kept on the operand stack.
+   */
+  private static class ForState {
+    final Iterator<?> iterator;
+    int index = 0;
+
+    ForState(Iterator<?> iterator) {
+      this.iterator = iterator;
+    }
+  }
+
+  private final Interpreter interpreter;
+  private final Environment globals = new Environment();
+
+  VM(Interpreter interpreter) {
+    this.interpreter = interpreter;
+    NativeFunctions.define(globals);
+  }
+
+  /**
+   * Runs statements, reporting any runtime error. Returns false if a send
+   * or an error ended the script early.
+   */
+  boolean interpret(List<Stmt> statements, boolean prompt) {
+    try {
+      VMFunction script = new Compiler(this).compileScript(statements, prompt);
+      return execute(script, new Object[script.frameSize], null, 0) == COMPLETED;
+    } catch (RuntimeError error) {
+      Ark.runtimeError(error);
+      return false;
+    }
+  }
+
+  Object evaluate(Expr expr) {
+    VMFunction script = new Compiler(this).compileExpression(expr);
+    return execute(script, new Object[script.frameSize], null, 0);
+  }
+
+  Object global(String name) {
+    return globals.get(new Token(TokenType.IDENTIFIER, name, null, 0));
+  }
+
+  /**
+   * The cell of a global name, shared with the other engines through the
+   * {@link Globals} table.
+   */
+  int globalIndex(String name) {
+    return globals.names.index(name);
+  }
+
+  /**
+   * Run a function in the given frame, using {@code stack} from {@code base}
+   * upwards for operands. A fresh stack segment is allocated when the
+   * remaining space is too small.
+   */
+  Object execute(VMFunction function, Object[] frame, Object[] stack, int base) {
+    Chunk chunk = function.chunk;
+    int[] code = chunk.code;
+    Object[] constants = chunk.constants;
+    if (stack == null || base + chunk.maxStack > stack.length) {
+      stack = new Object[Math.max(STACK_SEGMENT, chunk.maxStack)];
+      base = 0;
+    }
+    int sp = base;
+    int ip = 0;
+
+    // Calls between VM lambdas do not recurse: the caller's frame and chunk
+    // are pushed on callers, and its ip and base kept in returns at the
+    // index of the frame.
+    Object[] callers = NO_CALLERS;
+    long[] returns = NO_RETURNS;
+    int top = 0;
+
+    for (;;) {
+      int op = code[ip++];
+      switch (op) {
+        /*
+        Constants & stack
+         */
+        case OpCode.CONSTANT:
+          stack[sp++] = constants[code[ip++]];
+          break;
+        case OpCode.NIL:
+          stack[sp++] = null;
+          break;
+        case OpCode.TRUE:
+          stack[sp++] = true;
+          break;
+        case OpCode.FALSE:
+          stack[sp++] = false;
+          break;
+        case OpCode.POP:
+          stack[--sp] = null;
+          break;
+        case OpCode.DUP:
+          stack[sp] = stack[sp - 1];
+          sp++;
+          break;
+        case OpCode.STRING:
+          stack[sp++] = ((ArkString) constants[code[ip++]]).share();
+          break;
+
+        /*
+        Variables
+         */
+        case OpCode.GET_LOCAL0:
+          stack[sp++] = frame[code[ip++]];
+          break;
+        case OpCode.GET_LOCAL: {
+          Object[] target = frame;
+          for (int depth = code[ip++]; depth > 0; --depth) {
+            target = (Object[]) target[0];
+          }
+          stack[sp++] = target[code[ip++]];
+          break;
+        }
+        case OpCode.SET_LOCAL: {
+          Object[] target = frame;
+          for (int depth = code[ip++]; depth > 0; --depth) {
+            target = (Object[]) target[0];
+          }
+          target[code[ip++]] = stack[sp - 1];
+          break;
+        }
+        case OpCode.DEFINE_LOCAL:
+          frame[code[ip++]] = stack[--sp];
+          break;
+        case OpCode.GET_GLOBAL: {
+          int cell = code[ip++];
+          stack[sp++] = globals.getGlobal(cell, chunk.tokens[ip - 2]);
+          break;
+        }
+        case OpCode.SET_GLOBAL: {
+          int cell = code[ip++];
+          globals.assignGlobal(cell, chunk.tokens[ip - 2], stack[sp - 1]);
+          break;
+        }
+        case OpCode.DEFINE_GLOBAL:
+          globals.define(code[ip++], stack[--sp]);
+          break;
+
+        /*
+        Operators
+         */
+        case OpCode.ADD: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.add(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.SUBTRACT: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.subtract(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.MULTIPLY: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.multiply(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.DIVIDE: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.divide(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.MODULO: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.modulo(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.POWER: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.power(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.GREATER: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.greater(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.GREATER_EQUAL: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.greaterEqual(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.LESS: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.less(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.LESS_EQUAL: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.lessEqual(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.EQUAL: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.equal(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.NOT_EQUAL: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.notEqual(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.BIT_AND: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.bitAnd(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.BIT_XOR: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.bitXor(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.BIT_OR: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.bitOr(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.LEFT_SHIFT: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.leftShift(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.RIGHT_SHIFT: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.rightShift(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.U_RIGHT_SHIFT: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.unsignedRightShift(chunk.tokens[ip - 1], stack[sp - 1], right);
+          break;
+        }
+        case OpCode.AND: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.isTruthy(stack[sp - 1]) && Operators.isTruthy(right);
+          break;
+        }
+        case OpCode.OR: {
+          Object right = stack[--sp];
+          stack[sp - 1] = Operators.isTruthy(stack[sp - 1]) || Operators.isTruthy(right);
+          break;
+        }
+        case OpCode.NOT:
+          stack[sp - 1] = !Operators.isTruthy(stack[sp - 1]);
+          break;
+        case OpCode.NEGATE:
+          stack[sp - 1] = Operators.negate(chunk.tokens[ip - 1], stack[sp - 1]);
+          break;
+        case OpCode.BIT_NOT:
+          stack[sp - 1] = Operators.bitNot(chunk.tokens[ip - 1], stack[sp - 1]);
+          break;
+
+        /*
+        Control flow
+         */
+        case OpCode.JUMP:
+          ip = code[ip];
+          break;
+        case OpCode.JUMP_IF_FALSE:
+          if (Operators.isTruthy(stack[--sp])) {
+            ip++;
+          } else {
+            ip = code[ip];
+          }
+          break;
+        case OpCode.JUMP_UNLESS_EQUAL: {
+          Object right = stack[--sp];
+          Object left = stack[--sp];
+          if ((Boolean) Operators.equal(chunk.tokens[ip - 1], left, right)) {
+            ip++;
+          } else {
+            ip = code[ip];
+          }
+          break;
+        }
+        case OpCode.JUMP_UNLESS_NOT_EQUAL: {
+          Object right = stack[--sp];
+          Object left = stack[--sp];
+          if ((Boolean) Operators.notEqual(chunk.tokens[ip - 1], left, right)) {
+            ip++;
+          } else {
+            ip = code[ip];
+          }
+          break;
+        }
+        case OpCode.JUMP_UNLESS_LESS: {
+          Object right = stack[--sp];
+          Object left = stack[--sp];
+          if ((Boolean) Operators.less(chunk.tokens[ip - 1], left, right)) {
+            ip++;
+          } else {
+            ip = code[ip];
+          }
+          break;
+        }
+        case OpCode.JUMP_UNLESS_LESS_EQUAL: {
+          Object right = stack[--sp];
+          Object left = stack[--sp];
+          if ((Boolean) Operators.lessEqual(chunk.tokens[ip - 1], left, right)) {
+            ip++;
+          } else {
+            ip = code[ip];
+          }
+          break;
+        }
+        case OpCode.JUMP_UNLESS_GREATER: {
+          Object right = stack[--sp];
+          Object left = stack[--sp];
+          if ((Boolean) Operators.greater(chunk.tokens[ip - 1], left, right)) {
+            ip++;
+          } else {
+            ip = code[ip];
+          }
+          break;
+        }
+        case OpCode.JUMP_UNLESS_GREATER_EQUAL: {
+          Object right = stack[--sp];
+          Object left = stack[--sp];
+          if ((Boolean) Operators.greaterEqual(chunk.tokens[ip - 1], left, right)) {
+            ip++;
+          } else {
+            ip = code[ip];
+          }
+          break;
+        }
+        case OpCode.CALL: {
+          int argc = code[ip++];
+          int args = sp - argc;
+          Object target = stack[args - 1];
+          if (!(target instanceof VMClosure) || !runsHere((VMClosure) target, argc)) {
+            Object result = call(chunk.tokens[ip - 2], target, stack, args, argc);
+            while (sp >= args) stack[--sp] = null;
+            stack[sp++] = result;
+            break;
+          }
+
+          // suspend the caller and run the callee in this loop, from its target slot up
+          if (top == callers.length) {
+            if (top == MAX_CALLERS) throw new RuntimeError(chunk.tokens[ip - 2], "Stack overflow.");
+            callers = Arrays.copyOf(callers, Math.max(16, top * 2));
+            returns = Arrays.copyOf(returns, callers.length);
+          }
+          callers[top] = frame;
+          returns[top] = (long) ip << 32 | base;
+          callers[++top] = chunk;
+          ++top;
+
+          VMClosure callee = (VMClosure) target;
+          frame = callee.frame(stack, args, argc);
+          while (sp >= args) stack[--sp] = null;
+          base = sp;
+          chunk = callee.function.chunk;
+          code = chunk.code;
+          constants = chunk.constants;
+          if (base + chunk.maxStack > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, base + chunk.maxStack));
+          }
+          ip = 0;
+          break;
+        }
+        case OpCode.TAIL_CALL: {
+          int argc = code[ip++];
+          int args = sp - argc;
+          Object target = stack[args - 1];
+          if (target instanceof VMClosure && runsHere((VMClosure) target, argc)) {
+            // run the callee in place of this call, so tail recursion takes no space
+            VMClosure callee = (VMClosure) target;
+            frame = callee.frame(stack, args, argc);
+            while (sp > base) stack[--sp] = null;
+            chunk = callee.function.chunk;
+            code = chunk.code;
+            constants = chunk.constants;
+            if (base + chunk.maxStack > stack.length) {
+              stack = Arrays.copyOf(stack, Math.max(stack.length * 2, base + chunk.maxStack));
+            }
+            ip = 0;
+            break;
+          }
+          Object result = call(chunk.tokens[ip - 2], target, stack, args, argc);
+          while (sp >= args) stack[--sp] = null;
+          stack[sp++] = result;
+          break;
+        }
+        case OpCode.RETURN: {
+          Object result = stack[--sp];
+          if (top == 0) return result;
+
+          // resume the caller, with the result in the callee's target slot
+          while (sp > base) stack[--sp] = null;
+          stack[sp++] = result;
+          chunk = (Chunk) callers[--top];
+          frame = (Object[]) callers[--top];
+          long resume = returns[top];
+          ip = (int) (resume >>> 32);
+          base = (int) resume;
+          code = chunk.code;
+          constants = chunk.constants;
+          break;
+        }
+        case OpCode.CLOSURE:
+          stack[sp++] = new VMClosure((VMFunction) constants[code[ip++]], frame, this);
+          break;
+        case OpCode.PUSH_FRAME: {
+          Object[] block = new Object[code[ip++]];
+          block[0] = frame;
+          frame = block;
+          break;
+        }
+        case OpCode.POP_FRAME:
+          frame = (Object[]) frame[0];
+          break;
+        case OpCode.ITERATOR: {
+          Object enumerable = stack[sp - 1];
+          if (enumerable instanceof ArkEnumerable) {
+            stack[sp - 1] = new ForState(((ArkEnumerable<?>) enumerable).iterator());
+          } else {
+            Ark.error(chunk.tokens[ip - 1], "for stmt target must be enumerable.");
+            stack[sp - 1] = new ForState(Collections.emptyIterator());
+          }
+          break;
+        }
+        case OpCode.FOR_ITER: {
+          ForState state = (ForState) stack[sp - 1];
+          boolean indexed = code[ip++] != 0;
+          if (!state.iterator.hasNext()) {
+            ip = code[ip];
+            break;
+          }
+          ip++;
+          stack[sp++] = state.iterator.next();
+          if (indexed) stack[sp++] = state.index++;
+          break;
+        }
+
+        /*
+        Collections & output
+         */
+        case OpCode.ARRAY: {
+          int count = code[ip++];
+          Object[] items = new Object[count];
+          for (int i = 0; i < count; ++i) {
+            items[i] = stack[sp - count + i];
+            stack[sp - count + i] = null;
+          }
+          sp -= count;
+          stack[sp++] = new ArkArray(items);
+          break;
+        }
+        case OpCode.DICT: {
+          int count = 2 * code[ip++];
+          Object[] entries = Arrays.copyOfRange(stack, sp - count, sp);
+          Arrays.fill(stack, sp - count, sp, null);
+          sp -= count;
+          stack[sp++] = Operators.dict(chunk.tokens[ip - 2], entries);
+          break;
+        }
+        case OpCode.STAGE: {
+          int argc = code[ip++];
+          boolean filter = code[ip++] != 0;
+          Object[] arguments = Arrays.copyOfRange(stack, sp - argc, sp);
+          Arrays.fill(stack, sp - argc, sp, null);
+          sp -= argc;
+          stack[sp - 1] = new Pipeline.Stage(chunk.tokens[ip - 3], stack[sp - 1], arguments, filter);
+          break;
+        }
+        case OpCode.PIPE: {
+          int count = code[ip++];
+          Pipeline.Stage[] stages = new Pipeline.Stage[count];
+          for (int i = 0; i < count; ++i) {
+            stages[i] = (Pipeline.Stage) stack[sp - count + i];
+            stack[sp - count + i] = null;
+          }
+          sp -= count;
+          stack[sp - 1] = Pipeline.run(interpreter, stack[sp - 1], stages);
+          break;
+        }
+        case OpCode.INDEX_GET: {
+          Object index = stack[--sp];
+          stack[sp - 1] = Operators.indexGet(chunk.tokens[ip - 1], stack[sp - 1], index);
+          break;
+        }
+        case OpCode.INDEX_SET: {
+          Object value = stack[--sp];
+          Object index = stack[--sp];
+          stack[sp - 1] = Operators.indexSet(chunk.tokens[ip - 1], stack[sp - 1], index, value);
+          break;
+        }
+        case OpCode.RANGE: {
+          boolean closed = code[ip++] != 0;
+          Object upper = stack[--sp];
+          stack[sp - 1] = Operators.range(chunk.tokens[ip - 2], stack[sp - 1], upper, closed);
+          break;
+        }
+        case OpCode.PRINT:
+          System.out.println(stack[--sp]);
+          break;
+        case OpCode.ECHO: {
+          Object value = stack[--sp];
+          if (value != null) System.out.println(value);
+          break;
+        }
+
+        default:
+          throw new IllegalStateException("Unknown opcode " + op + ".");
+      }
+    }
+  }
+
+  /*
+  Whether a call of the closure can run in this VM's loop. Calls with the
+  wrong number of arguments go through call, which reports them.
+   */
+  private boolean runsHere(VMClosure closure, int argc) {
+    return closure.vm == this && closure.function.arity == argc;
+  }
+
+  private Object call(Token token, Object target, Object[] stack, int base, int argc) {
+    if (target instanceof VMClosure) {
+      VMClosure closure = (VMClosure) target;
+      if (closure.function.arity != argc) {
+        Operators.checkArity(token, closure, argc);
+      }
+      return closure.invoke(stack, base, argc);
+    }
+
+    ArkCallable callable = Operators.checkCallable(token, target);
+    Operators.checkArity(token, callable, argc);
+
+    List<Object> arguments = new ArrayList<>(argc);
+    for (int i = base; i < base + argc; ++i) {
+      arguments.add(stack[i]);
+    }
+    return callable.call(interpreter, token, arguments);
+  }
+}
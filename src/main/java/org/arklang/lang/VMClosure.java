@@ -0,0 +1,53 @@
+package org.arklang.lang;
+
+import java.util.List;
+
+/**
+ * Runtime value of a lambda under the bytecode VM: a compiled function
+ * paired with the frame it was created in.
+ */
+public class VMClosure implements ArkCallable {
+
+  final VMFunction function;
+  final Object[] enclosing;
+  final VM vm;
+
+  VMClosure(VMFunction function, Object[] enclosing, VM vm) {
+    this.function = function;
+    this.enclosing = enclosing;
+    this.vm = vm;
+  }
+
+  @Override
+  public int arity() {
+    return function.arity;
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, List<Object> arguments) {
+    Object[] frame = new Object[function.frameSize];
+    frame[0] = enclosing;
+    for (int i = 0; i < arguments.size(); ++i) {
+      frame[i + 1] = arguments.get(i);
+    }
+    return vm.execute(function, frame, null, 0);
+  }
+
+  /**
+   * Call from within the VM with the arguments on its operand stack. The
+   * callee reuses the stack from the caller's target slot upwards.
+   */
+  Object invoke(Object[] stack, int base, int argc) {
+    return vm.execute(function, frame(stack, base, argc), stack, base - 1);
+  }
+
+  /**
+   * A new frame for a call, holding the arguments on the operand stack.
+   */
+  Object[] frame(Object[] stack, int base, int argc) {
+    Object[] frame = new Object[function.frameSize];
+    frame[0] = enclosing;
+    System.arraycopy(stack, base, frame, 1, argc);
+    return frame;
+  }
+}
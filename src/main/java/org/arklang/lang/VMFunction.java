@@ -0,0 +1,23 @@
+package org.arklang.lang;
+
+/**
+ * Compiled form of a lambda body (or of a whole script).
+ */
+class VMFunction {
+  final String name;
+  final int arity;
+  final int frameSize;
+  final Chunk chunk;
+
+  VMFunction(String name, int arity, int frameSize, Chunk chunk) {
+    this.name = name;
+    this.arity = arity;
+    this.frameSize = frameSize;
+    this.chunk = chunk;
+  }
+
+  @Override
+  public String toString() {
+    return name == null ? "<lambda>" : "<lambda " + name + ">";
+  }
+}
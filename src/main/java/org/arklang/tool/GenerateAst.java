@@ -13,30 +13,35 @@ public class GenerateAst {
     }
     String outputDir = args[0];
     defineAst(outputDir, "Expr", Arrays.asList(
-        "Assign   : Token name, Expr value",
+        "Assign   : Token name, Expr value ; int depth = -1, int slot",
         "Operation: Token token, Expr target, List<Expr> arguments",
-        "Binary   : Token operator, Expr left, Expr right",
+        "Binary   : Token operator, Expr left, Expr right" +
+            " ; BinaryNode node = BinaryNode.UNINITIALIZED",
         "Unary    : Token operator, Expr right",
         "Literal  : Object value",
-        "Variable : Token name",
+        "Variable : Token name ; int depth = -1, int slot",
         "Ternary  : Expr condition, Expr expr1, Expr expr2",
-        "Lambda   : Token name, List<Token> parameters, List<Stmt> body",
+        "Lambda   : Token name, List<Token> parameters, List<Stmt> body" +
+            " ; int slot = -1, int frameSize, int calls, volatile CompiledLambda compiled",
         "Array    : Token bracket, List<Expr> items",
-        "Str      : Token token, String str",
+        "Dict     : Token token, List<Expr> keys, List<Expr> values",
+        "Str      : Token token, String str ; volatile ArkString value",
         "Char     : Token token, Character c",
         "IndexGet : Expr indexee, Token token, Expr index",
         "IndexSet : Expr indexee, Token token, Expr index, Expr value",
-        "Range    : Expr lower, Expr upper, Token token, boolean closed"
+        "Range    : Expr lower, Expr upper, Token token, boolean closed",
+        "Pipe     : Expr source, Token token, Expr stage, List<Expr> arguments, boolean filter"
         ));
     defineAst(outputDir, "Stmt", Arrays.asList(
-        "Block      : List<Stmt> statements",
+        "Block      : List<Stmt> statements ; int frameSize",
         "Expression : Expr expression",
         "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
         "While      : Expr condition, Stmt body",
-        "ForIn      : Token token, Token itemIterator, Token indexIterator, Expr enumerable, Stmt body",
+        "ForIn      : Token token, Token itemIterator, Token indexIterator, Expr enumerable, Stmt body" +
+            " ; int itemSlot = -1, int indexSlot = -1",
         "Print      : Expr expression",
-        "Send       : Token keyword, Expr value",
-        "Let        : List<Token> names, List<Expr> initializers",
+        "Send       : Token keyword, Expr value ; boolean tail",
+        "Let        : List<Token> names, List<Expr> initializers ; int[] slots",
         "Break      : Token keyword"
     ));
     System.out.println("Done writing to " + outputDir);
@@ -56,11 +61,16 @@ public class GenerateAst {
 
     defineVisitor(writer, baseName, types);
 
-    // The AST classes.
+    // The AST classes. Fields after ';' are mutable state attached to the
+    // node by later passes (resolved slots, JIT state) and are not part of
+    // the constructor. A depth of -1 means the name is global and its slot
+    // is the global cell. Trees are shared by threads once resolved, so state
+    // filled in lazily while running is volatile.
     for (String type : types) {
       String className = type.split(":")[0].trim();
-      String fields = type.split(":")[1].trim();
-      defineType(writer, baseName, className, fields);
+      String[] fields = type.split(":")[1].split(";");
+      defineType(writer, baseName, className, fields[0].trim(),
+          fields.length > 1 ? fields[1].trim() : null);
     }
 
     // The base accept() method.
@@ -73,7 +83,7 @@ public class GenerateAst {
 
   private static void defineType(
           PrintWriter writer, String baseName,
-          String className, String fieldList) {
+          String className, String fieldList, String mutableFieldList) {
     writer.println("  static class " + className + " extends " +
             baseName + " {");
 
@@ -100,6 +110,11 @@ public class GenerateAst {
     for (String field : fields) {
       writer.println("    final " + field + ";");
     }
+    if (mutableFieldList != null) {
+      for (String field : mutableFieldList.split(", ")) {
+        writer.println("    " + field + ";");
+      }
+    }
 
     writer.println("  }");
   }
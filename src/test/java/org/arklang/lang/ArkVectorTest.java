@@ -0,0 +1,51 @@
+package org.arklang.lang;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.arklang.lang.TokenType.*;
+
+public class ArkVectorTest {
+
+  @org.junit.Test
+  public void updatesLeaveOlderVersionsIntact() {
+    ArkVector vector = ArkVector.EMPTY;
+    for (int i = 0; i < 100000; ++i) {
+      vector = vector.conj(i);
+    }
+    ArkVector updated = vector.assoc(null, 500, -1).assoc(null, 99999, -2);
+
+    assertEquals(100000, updated.length());
+    assertEquals(-1, updated.get(null, 500));
+    assertEquals(-2, updated.get(null, 99999));
+    assertEquals(500, vector.get(null, 500));
+    assertEquals(99999, vector.get(null, 99999));
+
+    int expected = 0;
+    for (Object item : vector) {
+      assertEquals(expected++, item);
+    }
+    assertEquals(100000, expected);
+  }
+
+  @org.junit.Test
+  public void vectorNatives() {
+    Interpreter interpreter = new Interpreter();
+    String source =
+        "let v = (vec 0..40)\n" +
+        "let w = (conj (assoc v 3 'x') 40 41)\n" +
+        "let size = (len w)\n" +
+        "let sum = 0\n" +
+        "for x in v { sum = (+ sum x) }\n" +
+        "let old = v[3]\n" +
+        "let new = w[3]";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    interpreter.interpret(statements, false);
+
+    assertEquals(42, interpreter.lookUpGlobal(new Token(IDENTIFIER, "size", null, 1)));
+    assertEquals(780, interpreter.lookUpGlobal(new Token(IDENTIFIER, "sum", null, 1)));
+    assertEquals(3, interpreter.lookUpGlobal(new Token(IDENTIFIER, "old", null, 1)));
+    assertEquals('x', interpreter.lookUpGlobal(new Token(IDENTIFIER, "new", null, 1)));
+  }
+}
@@ -0,0 +1,84 @@
+package org.arklang.lang;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class AstCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final String source =
+      "let scale = 3\n" +
+      "(lambda total : items -> {\n" +
+      "  let sum = 0\n" +
+      "  for item, i in items { sum = (+ sum (* item scale)) }\n" +
+      "  send sum\n" +
+      "})\n" +
+      "let words = dict {\"a\": 1.5, 'b': nil}\n" +
+      "let bumped = [0, 1, 2] -> (lambda : x -> (+ x 1))\n" +
+      "send (+ (total 1...4) (len bumped))";
+
+  @org.junit.Test
+  public void cachedScriptRunsLikeTheParsedOne() throws Exception {
+    Path file = folder.newFile("script.ark").toPath();
+    byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+    Files.write(file, bytes);
+
+    List<Stmt> parsed = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(parsed);
+    AstCache.store(file, bytes, parsed);
+    assertTrue(Files.exists(AstCache.pathFor(file)));
+
+    List<Stmt> cached = AstCache.load(file, bytes);
+    assertNotNull(cached);
+    assertEquals(new Interpreter().run(parsed), new Interpreter().run(cached));
+    assertEquals(33, new Interpreter().run(cached));
+  }
+
+  @org.junit.Test
+  public void cacheIsSmallerThanItsSourceAndSharesItsPermissions() throws Exception {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 2000; ++i) {
+      text.append("(lambda f").append(i).append(" : a b -> {\n")
+          .append("  send \"item ").append(i).append("\"\n")
+          .append("})\n")
+          .append("let v").append(i).append(" = (f").append(i).append(" ").append(i).append(" 2.5)\n");
+    }
+    Path file = folder.newFile("large.ark").toPath();
+    byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+    Files.write(file, bytes);
+
+    List<Stmt> parsed = new Parser(new Scanner(text.toString()).scanTokens()).parse();
+    new Resolver().resolve(parsed);
+    AstCache.store(file, bytes, parsed);
+    Path cache = AstCache.pathFor(file);
+    assertTrue(Files.size(cache) < bytes.length);
+    assertEquals(parsed.size(), AstCache.load(file, bytes).size());
+
+    assumeTrue(file.getFileSystem().supportedFileAttributeViews().contains("posix"));
+    assertEquals(Files.getPosixFilePermissions(file), Files.getPosixFilePermissions(cache));
+  }
+
+  @org.junit.Test
+  public void staleCacheIsIgnored() throws Exception {
+    Path file = folder.newFile("script.ark").toPath();
+    byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+
+    List<Stmt> parsed = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(parsed);
+    AstCache.store(file, bytes, parsed);
+
+    assertNull(AstCache.load(file, (source + "\n").getBytes(StandardCharsets.UTF_8)));
+    Files.write(AstCache.pathFor(file), new byte[] { 'A', 'R', 'K' });
+    assertNull(AstCache.load(file, bytes));
+  }
+}
@@ -0,0 +1,54 @@
+package org.arklang.lang;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ClosureCompilerTest {
+
+  Interpreter interpreter = new Interpreter();
+  ClosureCompiler closures = new ClosureCompiler(interpreter);
+
+  private Object run(String source) {
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    closures.interpret(statements, false);
+    return closures.global("result");
+  }
+
+  @org.junit.Test
+  public void recursiveLambda() {
+    assertEquals(55, run(
+        "(lambda fib : n -> {\n" +
+        "  if (== n 0) send 0\n" +
+        "  if (== n 1) send 1\n" +
+        "  send (+ (fib (- n 2)) (fib (- n 1)))\n" +
+        "})\n" +
+        "let result = (fib 10)"));
+  }
+
+  @org.junit.Test
+  public void closureCapturesEnclosingEnvironment() {
+    assertEquals(12, run(
+        "(lambda counter : from -> {\n" +
+        "  (lambda generator : -> {\n" +
+        "    from = (+ from 1)\n" +
+        "    send (- from 1)\n" +
+        "  })\n" +
+        "  send generator\n" +
+        "})\n" +
+        "let gen = (counter 10)\n" +
+        "(gen) (gen)\n" +
+        "let result = (gen)"));
+  }
+
+  @org.junit.Test
+  public void whileWithBreak() {
+    assertEquals(10, run(
+        "let result = 0\n" +
+        "while true {\n" +
+        "  if (>= result 10) break\n" +
+        "  result = (+ result 1)\n" +
+        "}"));
+  }
+}
@@ -0,0 +1,88 @@
+package org.arklang.lang;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CompiledScriptTest {
+
+  private final CompiledScript script = CompiledScript.compile(
+      "(lambda total : items -> {\n" +
+      "  let sum = 0\n" +
+      "  for item in items { sum = (+ sum item) }\n" +
+      "  send sum\n" +
+      "})\n" +
+      "send (+ prefix (total items))");
+
+  @org.junit.Test
+  public void runsWithBoundInputs() {
+    Map<String, Object> inputs = new HashMap<>();
+    inputs.put("prefix", "sum ");
+    inputs.put("items", Arrays.asList(1, 2, 3));
+    assertEquals("sum 6", script.run(inputs).toString());
+
+    inputs.put("items", Collections.singletonList(10));
+    assertEquals("sum 10", script.run(inputs).toString());
+  }
+
+  @org.junit.Test
+  public void runsInParallel() throws Exception {
+    Thread[] threads = new Thread[8];
+    Object[] results = new Object[threads.length];
+    for (int t = 0; t < threads.length; ++t) {
+      int n = t;
+      threads[t] = new Thread(() -> {
+        Map<String, Object> inputs = new HashMap<>();
+        inputs.put("prefix", "");
+        inputs.put("items", Arrays.asList(n, n, n));
+        for (int i = 0; i < 200; ++i) {
+          results[n] = script.run(inputs).toString();
+        }
+      });
+    }
+    for (Thread thread : threads) thread.start();
+    for (Thread thread : threads) thread.join();
+
+    for (int t = 0; t < threads.length; ++t) {
+      assertEquals(String.valueOf(3 * t), results[t]);
+    }
+  }
+
+  @org.junit.Test
+  public void globalsBelongToTheirScript() {
+    Environment globals = script.globals();
+    Map<String, Object> inputs = new HashMap<>();
+    inputs.put("prefix", "");
+    inputs.put("items", Arrays.asList(4, 5));
+    assertEquals("9", script.run(globals, inputs).toString());
+
+    CompiledScript other = CompiledScript.compile("send 1");
+    try {
+      other.run(globals, Collections.emptyMap());
+      fail("Expected globals of another script to be refused.");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @org.junit.Test
+  public void rejectsInvalidSourceWithItsErrors() {
+    try {
+      CompiledScript.compile("let x = 1\nlet = 1");
+      fail("Expected a compile error.");
+    } catch (CompileError error) {
+      assertEquals(1, error.problems().size());
+      assertEquals(2, error.problems().get(0).line());
+      assertEquals("Expect variable name.", error.problems().get(0).message());
+      assertTrue(error.getMessage().contains("[line 2] Error at '=': Expect variable name."));
+    }
+    assertFalse(Ark.hadError);
+  }
+
+  @org.junit.Test(expected = RuntimeError.class)
+  public void throwsRuntimeErrors() {
+    script.run(Collections.singletonMap("prefix", ""));
+  }
+}
@@ -1,14 +1,73 @@
 package org.arklang.lang;
 
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 import static org.arklang.lang.TokenType.*;
 
+/**
+ * Language semantics, checked on each execution engine. Tests of the tree
+ * walker's own machinery only run on it.
+ */
+@RunWith(Parameterized.class)
 public class InterpreterTest {
 
+  @Parameterized.Parameters(name = "{0}")
+  public static Collection<Object[]> engines() {
+    return Arrays.asList(new Object[][] {
+        { Ark.Engine.TREE }, { Ark.Engine.CLOSURE }, { Ark.Engine.VM },
+    });
+  }
+
+  private final Ark.Engine engine;
   Interpreter interpreter = new Interpreter();
+  ClosureCompiler closures = new ClosureCompiler(interpreter);
+  VM vm = new VM(interpreter);
+
+  public InterpreterTest(Ark.Engine engine) {
+    this.engine = engine;
+  }
+
+  private boolean interpret(List<Stmt> statements) {
+    switch (engine) {
+      case CLOSURE: return closures.interpret(statements, false);
+      case VM: return vm.interpret(statements, false);
+      default: return interpreter.interpret(statements, false);
+    }
+  }
+
+  private Object evaluate(Expr expr) {
+    switch (engine) {
+      case CLOSURE: return closures.evaluate(expr);
+      case VM: return vm.evaluate(expr);
+      default: return interpreter.evaluate(expr);
+    }
+  }
+
+  private Object global(String name) {
+    switch (engine) {
+      case CLOSURE: return closures.global(name);
+      case VM: return vm.global(name);
+      default: return interpreter.lookUpGlobal(new Token(IDENTIFIER, name, null, 1));
+    }
+  }
+
+  private void treeOnly() {
+    assumeTrue(engine == Ark.Engine.TREE);
+  }
 
   @org.junit.Before
   public void setUp() throws Exception {
@@ -56,7 +115,7 @@ public class InterpreterTest {
           op2 = constructExpr(set[1]);
       Expr.Binary binary = new Expr.Binary(token, op1, op2);
 
-      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], interpreter.evaluate(binary));
+      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], evaluate(binary));
     }
   }
 
@@ -84,7 +143,7 @@ public class InterpreterTest {
           op2 = constructExpr(set[1]);
       Expr.Binary binary = new Expr.Binary(token, op1, op2);
 
-      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], interpreter.evaluate(binary));
+      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], evaluate(binary));
     }
   }
 
@@ -109,7 +168,7 @@ public class InterpreterTest {
           op2 = constructExpr(set[1]);
       Expr.Binary binary = new Expr.Binary(token, op1, op2);
 
-      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], interpreter.evaluate(binary));
+      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], evaluate(binary));
     }
   }
 
@@ -137,7 +196,7 @@ public class InterpreterTest {
           op2 = constructExpr(set[1]);
       Expr.Binary binary = new Expr.Binary(token, op1, op2);
 
-      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], interpreter.evaluate(binary));
+      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], evaluate(binary));
     }
   }
 
@@ -161,7 +220,7 @@ public class InterpreterTest {
           op2 = constructExpr(set[1]);
       Expr.Binary binary = new Expr.Binary(token, op1, op2);
 
-      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], interpreter.evaluate(binary));
+      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], evaluate(binary));
     }
   }
 
@@ -184,7 +243,7 @@ public class InterpreterTest {
           op2 = constructExpr(set[1]);
       Expr.Binary binary = new Expr.Binary(token, op1, op2);
 
-      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], interpreter.evaluate(binary));
+      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], evaluate(binary));
     }
   }
 
@@ -211,7 +270,7 @@ public class InterpreterTest {
           op2 = constructExpr(set[1]);
       Expr.Binary binary = new Expr.Binary(token, op1, op2);
 
-      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], interpreter.evaluate(binary));
+      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], evaluate(binary));
     }
   }
 
@@ -244,7 +303,7 @@ public class InterpreterTest {
           op2 = constructExpr(set[1]);
       Expr.Binary binary = new Expr.Binary(token, op1, op2);
 
-      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], interpreter.evaluate(binary));
+      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], evaluate(binary));
     }
   }
 
@@ -271,7 +330,7 @@ public class InterpreterTest {
           op2 = constructExpr(set[1]);
       Expr.Binary binary = new Expr.Binary(token, op1, op2);
 
-      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], interpreter.evaluate(binary));
+      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], evaluate(binary));
     }
   }
 
@@ -305,7 +364,7 @@ public class InterpreterTest {
           op2 = constructExpr(set[1]);
       Expr.Binary binary = new Expr.Binary(token, op1, op2);
 
-      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], interpreter.evaluate(binary));
+      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], evaluate(binary));
     }
   }
 
@@ -336,7 +395,7 @@ public class InterpreterTest {
           op2 = constructExpr(set[1]);
       Expr.Binary binary = new Expr.Binary(token, op1, op2);
 
-      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], interpreter.evaluate(binary));
+      assertEquals(set[0] + " " + token.lexeme + " " + set[1] + " = " + set[2], set[2], evaluate(binary));
     }
   }
 
@@ -419,4 +478,502 @@ public class InterpreterTest {
   @org.junit.Test
   public void visitBlockStmt() {
   }
-}
\ No newline at end of file
+
+  @org.junit.Test
+  public void hotLambdaIsCompiled() {
+    treeOnly();
+    String source =
+        "(lambda fib : n -> {\n" +
+        "  if (< n 2) send n\n" +
+        "  let a = (fib (- n 2)), b = (fib (- n 1))\n" +
+        "  send (+ a b)\n" +
+        "})\n" +
+        "let result = (fib 15)";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+
+    int threshold = Jit.threshold();
+    int compiled = Jit.compiledCount();
+    Jit.setThreshold(10);
+    try {
+      interpret(statements);
+    } finally {
+      Jit.setThreshold(threshold);
+    }
+
+    assertEquals(610, global("result"));
+    assertEquals(compiled + 1, Jit.compiledCount());
+  }
+
+  @org.junit.Test
+  public void lambdaHotOnSeveralThreadsIsCompiledOnce() throws Exception {
+    treeOnly();
+    List<Stmt> statements = new Parser(new Scanner(
+        "(lambda square : n -> (* n n))").scanTokens()).parse();
+    new Resolver().resolve(statements);
+    interpret(statements);
+    Lambda square = (Lambda) global("square");
+
+    int threshold = Jit.threshold();
+    int compiled = Jit.compiledCount();
+    Jit.setThreshold(1);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      Thread[] threads = new Thread[8];
+      for (int t = 0; t < threads.length; ++t) {
+        Interpreter own = interpreter.fork();
+        threads[t] = new Thread(() -> {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < 100; ++i) {
+            assertEquals(9, square.invoke(own, new Object[] {3}));
+          }
+        });
+        threads[t].start();
+      }
+      start.countDown();
+      for (Thread thread : threads) thread.join();
+    } finally {
+      Jit.setThreshold(threshold);
+    }
+
+    assertEquals(compiled + 1, Jit.compiledCount());
+  }
+
+  @org.junit.Test
+  public void binaryNodeSpecializesAndDeoptimizes() {
+    treeOnly();
+    Token token = new Token(PLUS, "+", null, 1);
+    Expr.Literal left = new Expr.Literal(1);
+    Expr.Literal right = new Expr.Literal(2);
+    Expr.Binary binary = new Expr.Binary(token, left, right);
+
+    assertEquals(3, evaluate(binary));
+    assertNotSame(BinaryNode.UNINITIALIZED, binary.node);
+    assertNotSame(BinaryNode.GENERIC, binary.node);
+
+    Expr.Binary mixed = new Expr.Binary(token, new Expr.Literal(1.5), right);
+    assertEquals(3.5, evaluate(mixed));
+    BinaryNode doubles = mixed.node;
+    assertEquals(2.0, evaluate(new Expr.Binary(token, new Expr.Literal(1.0), left)));
+
+    binary.node = doubles;
+    assertEquals(3, evaluate(binary));
+    assertSame(BinaryNode.GENERIC, binary.node);
+  }
+
+  @org.junit.Test
+  public void blockLocalsShadowInSlots() {
+    String source =
+        "let result = 0\n" +
+        "(lambda f : a -> {\n" +
+        "  let b = (* a 10)\n" +
+        "  {\n" +
+        "    let a = 1\n" +
+        "    b = (+ b a)\n" +
+        "  }\n" +
+        "  send (+ a b)\n" +
+        "})\n" +
+        "result = (f 2)";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    interpret(statements);
+
+    assertEquals(23, global("result"));
+  }
+
+  @org.junit.Test
+  public void tailCallsRunInConstantStack() {
+    String source =
+        "(lambda even : n -> {\n" +
+        "  if (== n 0) send true\n" +
+        "  send (odd (- n 1))\n" +
+        "})\n" +
+        "(lambda odd : n -> {\n" +
+        "  if (== n 0) send false\n" +
+        "  send (even (- n 1))\n" +
+        "})\n" +
+        "let result = (even 1000000)";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    interpret(statements);
+
+    assertEquals(true, global("result"));
+  }
+
+  @org.junit.Test
+  public void arrayStorageWidensOnHeterogeneousWrites() {
+    String source =
+        "let ints = [1, 2, 3]\n" +
+        "ints[1] = 2.5\n" +
+        "let empty = []\n" +
+        "(add empty 'a' 'b')\n" +
+        "(add empty 1)\n" +
+        "let range = 1..4\n" +
+        "(add range nil)";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    interpret(statements);
+
+    assertEquals("[1, 2.5, 3]",
+        global("ints").toString());
+    assertEquals("[a, b, 1]",
+        global("empty").toString());
+    assertEquals("[1, 2, 3, null]",
+        global("range").toString());
+  }
+
+  @org.junit.Test
+  public void arithmeticOnIndexedIntsFollowsWidenedStorage() {
+    String source =
+        "let ints = [1000, 2000, 3000]\n" +
+        "let range = 100..103\n" +
+        "let diffs = []\n" +
+        "for x, i in 0..3 {\n" +
+        "  if (== i 2) ints[2] = 0.5\n" +
+        "  (add diffs (- ints[i] range[i]))\n" +
+        "}";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    interpret(statements);
+
+    assertEquals("[900, 1899, -101.5]",
+        global("diffs").toString());
+  }
+
+  @org.junit.Test
+  public void rangesAreLazyUntilWritten() {
+    String source =
+        "let big = 0..2000000000\n" +
+        "let size = (len big)\n" +
+        "let last = big[1999999999]\n" +
+        "let small = 1...3\n" +
+        "small[0] = 'a'";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    interpret(statements);
+
+    assertEquals(2000000000, global("size"));
+    assertEquals(1999999999, global("last"));
+    assertEquals("[a, 2, 3]",
+        global("small").toString());
+  }
+
+  @org.junit.Test
+  public void rangeBoundsAtTheEdges() {
+    String source =
+        "let inverted = 5...3\n" +
+        "let empty = 5..3\n" +
+        "let widest = (len 0...2147483646)\n" +
+        "let top = (len 2147483640...2147483647)";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    interpret(statements);
+
+    assertEquals("[3]", global("inverted").toString());
+    assertEquals("[]", global("empty").toString());
+    assertEquals(Integer.MAX_VALUE, global("widest"));
+    assertEquals(8, global("top"));
+
+    Token token = new Token(DOT_DOT_DOT, "...", null, 1);
+    try {
+      Operators.range(token, 0, Integer.MAX_VALUE, true);
+      fail("Expected a runtime error.");
+    } catch (RuntimeError e) {
+      assertEquals("Range is too large.", e.getMessage());
+    }
+  }
+
+  @org.junit.Test
+  public void stringIndexSetInflatesCompactText() {
+    ArkString str = new ArkString("hello");
+    str.set(null, 0, 'j');
+    assertEquals("jello", str.toString());
+    str.set(null, 4, '\u03c9');
+    assertEquals("jell\u03c9", str.toString());
+    assertEquals('\u03c9', str.get(null, 4));
+    assertEquals(5, str.length());
+  }
+
+  @org.junit.Test
+  public void concatenationBuildsFlattenableString() {
+    String source =
+        "let part = \"ab\"\n" +
+        "let s = \"\"\n" +
+        "for i in 0..100000 { s = (+ s part) }\n" +
+        "part[0] = 'x'\n" +
+        "let size = (len s)\n" +
+        "let first = s[0]\n" +
+        "let mixed = (+ (+ 1 part) 2.5)";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    interpret(statements);
+
+    assertEquals(200000, global("size"));
+    assertEquals('a', global("first"));
+    assertEquals("1xb2.5",
+        global("mixed").toString());
+  }
+
+  @org.junit.Test
+  public void stringLiteralsAreCopiedOnWrite() {
+    String source =
+        "let last = nil\n" +
+        "for i in 0..3 {\n" +
+        "  let s = \"abc\"\n" +
+        "  s[i] = 'x'\n" +
+        "  last = s\n" +
+        "}\n" +
+        "let fresh = \"abc\"";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    interpret(statements);
+
+    assertEquals("abx",
+        global("last").toString());
+    assertEquals("abc",
+        global("fresh").toString());
+  }
+
+  @org.junit.Test
+  public void dictLiteralLookupAndGrowth() {
+    String source =
+        "let key = \"b\"\n" +
+        "let d = dict {\"a\": 1, key: 2}\n" +
+        "key[0] = 'z'\n" +
+        "for i in 0..1000 { d[i] = (* i 2) }\n" +
+        "let b = d['b']\n" +
+        "let last = d[999]\n" +
+        "d[2.0] = 5\n" +
+        "d[2.5] = 6\n" +
+        "let whole = d[2]\n" +
+        "let half = d[2.5]\n" +
+        "let missing = d[\"z\"]\n" +
+        "let size = (len d)";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    interpret(statements);
+
+    assertEquals(2, global("b"));
+    assertEquals(1998, global("last"));
+    assertEquals(5, global("whole"));
+    assertEquals(6, global("half"));
+    assertNull(global("missing"));
+    assertEquals(1003, global("size"));
+  }
+
+  @org.junit.Test
+  public void pipelineStagesRunInOnePass() {
+    String source =
+        "let calls = 0\n" +
+        "(lambda pow : n exp -> (** n exp))\n" +
+        "(lambda less : n limit -> {\n" +
+        "  calls = (+ calls 1)\n" +
+        "  send (< n limit)\n" +
+        "})\n" +
+        "let result = (1...4) -> (pow 2) ->? (less 5) -> (lambda : x -> (* x 10))";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    interpret(statements);
+
+    assertEquals("[10, 40]",
+        global("result").toString());
+    assertEquals(4, global("calls"));
+  }
+
+  @org.junit.Test
+  public void pipelineGivesNativesArgumentsOfTheirOwn() {
+    treeOnly();
+    List<List<Object>> kept = new ArrayList<>();
+    ArkCallable keep = new ArkCallable() {
+      @Override
+      public int arity() {
+        return 2;
+      }
+
+      @Override
+      public Object call(Interpreter interpreter, List<Object> arguments) {
+        kept.add(arguments);
+        return arguments.get(0);
+      }
+    };
+    Pipeline.Stage stage = new Pipeline.Stage(null, keep, new Object[] {"tag"}, false);
+    Pipeline.run(interpreter, ArkArray.range(0, 3), new Pipeline.Stage[] {stage});
+
+    assertEquals("[[0, tag], [1, tag], [2, tag]]", kept.toString());
+  }
+
+  @org.junit.Test
+  public void parallelNativesKeepItemOrder() {
+    String source =
+        "(lambda square : x -> {\n" +
+        "  let y = (* x x)\n" +
+        "  send y\n" +
+        "})\n" +
+        "let squares = (pmap 0..10000 square)\n" +
+        "let odd = (pfilter 0..10 lambda : x -> (== (% x 2) 1))\n" +
+        "let sum = (preduce 0...100 lambda : a b -> (+ a b) 0)";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    interpret(statements);
+
+    ArkArray squares = (ArkArray) global("squares");
+    for (int i = 0; i < 10000; ++i) {
+      assertEquals(i * i, squares.get(null, i));
+    }
+    assertEquals("[1, 3, 5, 7, 9]",
+        global("odd").toString());
+    assertEquals(5050, global("sum"));
+  }
+
+  @org.junit.Test
+  public void parallelNativesReportErrorsAtTheCall() {
+    String source = "\n(pmap 0..10 5)";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    try {
+      evaluate(((Stmt.Expression) statements.get(0)).expression);
+      fail("Expected a runtime error.");
+    } catch (RuntimeError e) {
+      assertEquals("Expected a lambda to apply.", e.getMessage());
+      assertEquals(2, e.line());
+    }
+  }
+
+  @org.junit.Test
+  public void scriptsRunConcurrentlyOnOneInterpreter() throws Exception {
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; ++t) {
+      String source =
+          "(lambda fib" + t + " : n -> {\n" +
+          "  if (< n 2) send n\n" +
+          "  let a = (fib" + t + " (- n 1))\n" +
+          "  send (+ a (fib" + t + " (- n 2)))\n" +
+          "})\n" +
+          "let result" + t + " = (+ (fib" + t + " 20) " + t + ")";
+      List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+      new Resolver().resolve(statements);
+      threads[t] = new Thread(() -> interpret(statements));
+    }
+    for (Thread thread : threads) thread.start();
+    for (Thread thread : threads) thread.join();
+
+    for (int t = 0; t < threads.length; ++t) {
+      assertEquals(6765 + t,
+          global("result" + t));
+    }
+  }
+
+  @org.junit.Test
+  public void scannerSharesLexemesAndReadsLiteralsLazily() {
+    treeOnly();
+    TokenBuffer tokens = new Scanner("let count = (+ count 12 4.5 \"a b\" 'c')").scanTokens();
+    assertEquals(12, tokens.size());
+    assertEquals(LET, tokens.type(0));
+    assertSame(tokens.lexeme(1), tokens.lexeme(5));
+    assertEquals("count", tokens.token(5).lexeme);
+    assertSame(tokens.lexeme(3), new Scanner("(").scanTokens().lexeme(0));
+    assertEquals(12, tokens.literal(6));
+    assertEquals(4.5, tokens.literal(7));
+    assertEquals("a b", tokens.literal(8));
+    assertEquals('c', tokens.literal(9));
+    assertEquals(EOF, tokens.type(11));
+  }
+
+  @org.junit.Test
+  public void streamedScriptRunsOneDeclarationAtATime() throws Exception {
+    StringBuilder source = new StringBuilder("let total = 0\n");
+    for (int i = 0; i < 20000; ++i) {
+      source.append("total = (+ total (len \"h\u00e9llo\"))\n");
+    }
+    source.append("send total\n(out \"not reached\")");
+    Path file = Files.createTempFile("stream", ".ark");
+    try {
+      Files.write(file, source.toString().getBytes(Charset.defaultCharset()));
+      Parser parser = new Parser(new Scanner(Source.map(file)).streamTokens());
+      Resolver resolver = new Resolver();
+      int completed = 0;
+      for (Stmt stmt = parser.next(); stmt != null; stmt = parser.next()) {
+        List<Stmt> statements = Collections.singletonList(stmt);
+        resolver.resolve(statements);
+        if (!interpret(statements)) break;
+        ++completed;
+      }
+      assertEquals(20001, completed);
+      assertEquals(100000, global("total"));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @org.junit.Test
+  public void lazyLambdaBodiesAreParsedOnFirstCall() {
+    treeOnly();
+    String source =
+        "let k = 10\n" +
+        "(lambda unused : -> { let = 3 })\n" +
+        "(lambda outer : x -> {\n" +
+        "  let y = (+ x k)\n" +
+        "  (lambda inner : -> { send (* y 2) })\n" +
+        "  send (inner)\n" +
+        "})\n" +
+        "send (outer 1)";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens(), true).parse();
+    new Resolver().resolve(statements);
+    assertFalse(Ark.hadError);
+
+    Expr.Lambda unused = (Expr.Lambda) ((Stmt.Expression) statements.get(1)).expression;
+    Expr.Lambda outer = (Expr.Lambda) ((Stmt.Expression) statements.get(2)).expression;
+    assertFalse(((LazyBody) unused.body).isParsed());
+    assertEquals(22, interpreter.run(statements));
+    assertTrue(((LazyBody) outer.body).isParsed());
+    assertFalse(((LazyBody) unused.body).isParsed());
+
+    LazyBody broken = (LazyBody) unused.body;
+    RuntimeError first = null, second = null;
+    try { broken.statements(); } catch (RuntimeError error) { first = error; }
+    try { broken.statements(); } catch (RuntimeError error) { second = error; }
+    assertNotNull(first);
+    assertSame(first, second);
+    assertTrue(first.getMessage().contains("[line 2] Error at '=': Expect variable name."));
+    assertFalse(Ark.hadError);
+  }
+
+  @org.junit.Test
+  public void spawnedTasksTalkThroughChannels() {
+    String source =
+        "let ch = (chan 2)\n" +
+        "(lambda produce : c n -> {\n" +
+        "  for i in 0..n (put c i)\n" +
+        "  (close c)\n" +
+        "  send n\n" +
+        "})\n" +
+        "let task = (spawn produce ch 100)\n" +
+        "let total = 0\n" +
+        "for x in ch total = (+ total x)\n" +
+        "let count = (await task)\n" +
+        "let drained = (take ch)";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    interpret(statements);
+
+    assertEquals(4950, global("total"));
+    assertEquals(100, global("count"));
+    assertNull(global("drained"));
+  }
+
+  @org.junit.Test
+  public void awaitRaisesAnyFailureOfTheTask() {
+    String source =
+        "(lambda divide : n -> { send (/ n 0) })\n" +
+        "let failed = (spawn divide 1)\n" +
+        "let quotient = (await failed)";
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    // the division throws a Java exception, which await raises as an error
+    assertFalse(interpret(statements));
+  }
+}
@@ -0,0 +1,95 @@
+package org.arklang.lang;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.arklang.lang.TokenType.*;
+
+public class VMTest {
+
+  Interpreter interpreter = new Interpreter();
+  VM vm = new VM(interpreter);
+
+  private Object run(String source) {
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver().resolve(statements);
+    vm.interpret(statements, false);
+    return vm.global("result");
+  }
+
+  @org.junit.Test
+  public void binaryExpr() {
+    /*
+     [ operator, op1, op2, expected ]
+     */
+    final Object[][] vals = new Object[][] {
+        {PLUS, 1, 2, 3},
+        {PLUS, 1.5, 2, 3.5},
+        {MINUS, 2, 0.5, 1.5},
+        {STAR, -2.5, -1.5, 3.75},
+        {SLASH, -3, -2, 1},
+        {STAR_STAR, 2, 3, 8},
+        {PERCENT, -10.0, 4, -2.0},
+        {LESS_EQUAL, 4.0, 4, true},
+        {EQUAL_EQUAL, 4, 4.0, true},
+        {BANG_EQUAL, 'h', 'g', true},
+    };
+
+    for (Object[] set : vals) {
+      Token token = new Token((TokenType) set[0], set[0].toString(), null, 1);
+      Expr.Binary binary = new Expr.Binary(token,
+          new Expr.Literal(set[1]), new Expr.Literal(set[2]));
+
+      assertEquals(set[1] + " " + set[0] + " " + set[2] + " = " + set[3],
+          set[3], vm.evaluate(binary));
+    }
+  }
+
+  @org.junit.Test
+  public void recursiveLambda() {
+    assertEquals(55, run(
+        "(lambda fib : n -> {\n" +
+        "  if (== n 0) send 0\n" +
+        "  if (== n 1) send 1\n" +
+        "  send (+ (fib (- n 2)) (fib (- n 1)))\n" +
+        "})\n" +
+        "let result = (fib 10)"));
+  }
+
+  @org.junit.Test
+  public void closureCapturesEnclosingFrame() {
+    assertEquals(12, run(
+        "(lambda counter : from -> {\n" +
+        "  (lambda generator : -> {\n" +
+        "    from = (+ from 1)\n" +
+        "    send (- from 1)\n" +
+        "  })\n" +
+        "  send generator\n" +
+        "})\n" +
+        "let gen = (counter 10)\n" +
+        "(gen) (gen)\n" +
+        "let result = (gen)"));
+  }
+
+  @org.junit.Test
+  public void forInWithIndexAndBreak() {
+    assertEquals(6, run(
+        "let result = 0\n" +
+        "for x, i in 1...10 {\n" +
+        "  if (> i 2) {\n" +
+        "    break\n" +
+        "  }\n" +
+        "  result = (+ result x)\n" +
+        "}"));
+  }
+
+  @org.junit.Test
+  public void tailCallsReuseTheFrame() {
+    assertEquals(500000500000.0, run(
+        "(lambda sum : n acc -> {\n" +
+        "  if (== n 0) send acc\n" +
+        "  send (sum (- n 1) (+ acc n))\n" +
+        "})\n" +
+        "let result = (sum 1000000 0.0)"));
+  }
+}